@@ -1,5 +1,6 @@
 -- NeoAI GC 数据库初始化脚本
 -- 执行方式: mysql -u root -p < init.sql
+-- 已有数据库升级到当前表结构请执行 migrate.sql
 
 -- 创建数据库
 CREATE DATABASE IF NOT EXISTS neoaigc DEFAULT CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci;
@@ -29,13 +30,37 @@ CREATE TABLE IF NOT EXISTS ai_tasks (
     result_url VARCHAR(1000) COMMENT '结果URL',
     status VARCHAR(50) DEFAULT 'PENDING' COMMENT '状态: PENDING, PROCESSING, COMPLETED, FAILED',
     error_message TEXT COMMENT '错误信息',
+    provider VARCHAR(50) COMMENT 'AI服务提供商: tencent, aliyun',
+    lease_owner VARCHAR(100) COMMENT '持有租约的工作节点',
+    lease_expires_at DATETIME COMMENT '租约过期时间',
+    attempts INT NOT NULL DEFAULT 0 COMMENT '已领取次数',
+    force_fresh TINYINT(1) NOT NULL DEFAULT 0 COMMENT '跳过生成结果缓存',
+    item_count INT NOT NULL DEFAULT 0 COMMENT '批量任务的子项数，0表示单张图片的任务',
+    items_completed INT NOT NULL DEFAULT 0 COMMENT '已成功的子项数',
+    items_failed INT NOT NULL DEFAULT 0 COMMENT '已失败的子项数',
+    bundle_zip TINYINT(1) NOT NULL DEFAULT 0 COMMENT '批量任务完成后把结果打包为zip',
     created_at DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     updated_at DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
-    INDEX idx_user_id (user_id),
-    INDEX idx_status (status),
+    INDEX idx_user_created (user_id, created_at, id),
+    INDEX idx_user_type_created (user_id, type, created_at, id),
+    INDEX idx_status_lease (status, lease_expires_at),
     INDEX idx_created_at (created_at)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='AI任务表';
 
+-- 批量任务子项表
+CREATE TABLE IF NOT EXISTS ai_task_items (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '子项ID',
+    task_id BIGINT NOT NULL COMMENT '所属任务ID',
+    seq INT NOT NULL COMMENT '在批量任务中的序号，从0开始',
+    image_url VARCHAR(1000) NOT NULL COMMENT '输入图片URL',
+    result_url VARCHAR(1000) COMMENT '结果URL',
+    status VARCHAR(50) DEFAULT 'PENDING' COMMENT '状态: PENDING, COMPLETED, FAILED',
+    error_message TEXT COMMENT '错误信息',
+    created_at DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    updated_at DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    UNIQUE KEY uk_task_seq (task_id, seq)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='批量任务子项表';
+
 -- 模板表
 CREATE TABLE IF NOT EXISTS templates (
     id BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '模板ID',
@@ -47,10 +72,22 @@ CREATE TABLE IF NOT EXISTS templates (
     sort INT DEFAULT 0 COMMENT '排序',
     status INT DEFAULT 1 COMMENT '状态: 0-禁用 1-启用',
     created_at DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    updated_at DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
     INDEX idx_type (type),
     INDEX idx_status (status)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='模板表';
 
+-- 生成结果缓存表
+CREATE TABLE IF NOT EXISTS generation_cache (
+    cache_key CHAR(64) PRIMARY KEY COMMENT '缓存键: SHA-256(提供商, 任务类型, 规范化提示词, 输入图片SHA-256)',
+    provider VARCHAR(50) NOT NULL COMMENT 'AI服务提供商',
+    type VARCHAR(50) NOT NULL COMMENT '任务类型',
+    result_url VARCHAR(1000) NOT NULL COMMENT '结果URL',
+    expires_at DATETIME NOT NULL COMMENT '过期时间',
+    created_at DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    INDEX idx_expires_at (expires_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='生成结果缓存表';
+
 -- 插入示例模板数据
 INSERT INTO templates (name, description, type, prompt, preview_image, sort) VALUES
 ('风景插画', 'Generate beautiful landscape illustration with vibrant colors and detailed scenery', 1, 'A beautiful landscape illustration, vibrant colors, detailed scenery, digital art style, high quality', 'https://images.unsplash.com/photo-1469474968028-56623f02e42e', 1),
@@ -0,0 +1,109 @@
+package com.neoaigc.bench;
+
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.logging.nologging.NoLoggingImpl;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * 数据库相关基准共用的连接池和MyBatis配置
+ * 默认使用MySQL模式的H2内存库，表结构由 init.sql 转换而来，只反映MyBatis和驱动的开销；
+ * 加 -Dbench.jdbc-url=jdbc:mysql://... -Dbench.jdbc-user= -Dbench.jdbc-password= 可对真实MySQL运行（需已执行init.sql）。
+ */
+final class BenchDatabase {
+
+    static final String H2_URL = "jdbc:h2:mem:bench;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private static final String MAPPER_DOCTYPE = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n"
+            + "<!DOCTYPE mapper PUBLIC \"-//mybatis.org//DTD Mapper 3.0//EN\" \"http://mybatis.org/dtd/mybatis-3-mapper.dtd\">\n";
+
+    final PooledDataSource dataSource;
+
+    final SqlSessionFactory sessionFactory;
+
+    private BenchDatabase(PooledDataSource dataSource, SqlSessionFactory sessionFactory) {
+        this.dataSource = dataSource;
+        this.sessionFactory = sessionFactory;
+    }
+
+    /**
+     * 打开数据库并加载 mapper/AiTaskMapper.xml
+     * @param extraMappers 基准自己的Mapper XML（不含文档头），可引用AiTaskMapper中的resultMap
+     */
+    static BenchDatabase open(String... extraMappers) throws Exception {
+        String url = System.getProperty("bench.jdbc-url", H2_URL);
+        String driver = url.startsWith("jdbc:h2:") ? "org.h2.Driver" : "com.mysql.cj.jdbc.Driver";
+        PooledDataSource dataSource = new PooledDataSource(driver, url,
+                System.getProperty("bench.jdbc-user", "sa"), System.getProperty("bench.jdbc-password", ""));
+        if (url.equals(H2_URL)) {
+            createSchema(dataSource);
+        }
+
+        Configuration configuration = new Configuration(new Environment("bench", new JdbcTransactionFactory(), dataSource));
+        configuration.setMapUnderscoreToCamelCase(true);
+        // 不输出SQL日志，避免日志开销掩盖差异
+        configuration.setLogImpl(NoLoggingImpl.class);
+        String resource = "mapper/AiTaskMapper.xml";
+        try (InputStream in = Resources.getResourceAsStream(resource)) {
+            new XMLMapperBuilder(in, configuration, resource, configuration.getSqlFragments()).parse();
+        }
+        for (int i = 0; i < extraMappers.length; i++) {
+            byte[] xml = (MAPPER_DOCTYPE + extraMappers[i]).getBytes(StandardCharsets.UTF_8);
+            new XMLMapperBuilder(new ByteArrayInputStream(xml), configuration, "bench-mapper-" + i,
+                    configuration.getSqlFragments()).parse();
+        }
+        return new BenchDatabase(dataSource, new SqlSessionFactoryBuilder().build(configuration));
+    }
+
+    void execute(String sql) throws Exception {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    void close() {
+        dataSource.forceCloseAll();
+    }
+
+    /**
+     * 去掉init.sql中H2不支持的建库语句和表选项后执行，同一进程内只执行一次
+     */
+    private static void createSchema(PooledDataSource dataSource) throws Exception {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            try (ResultSet tables = statement.executeQuery(
+                    "SELECT COUNT(*) FROM information_schema.tables WHERE table_name = 'ai_tasks'")) {
+                if (tables.next() && tables.getInt(1) > 0) {
+                    return;
+                }
+            }
+            String script = Files.readString(Paths.get(System.getProperty("bench.init-sql", "init.sql")), StandardCharsets.UTF_8)
+                    .replaceAll("(?i)CREATE DATABASE[^;]*;", "")
+                    .replaceAll("(?i)USE \\w+;", "")
+                    .replaceAll("\\)\\s*ENGINE=[^;]*;", ");");
+            Path temp = Files.createTempFile("bench-schema-", ".sql");
+            try {
+                Files.writeString(temp, script, StandardCharsets.UTF_8);
+                statement.execute("RUNSCRIPT FROM '" + temp.toAbsolutePath() + "' CHARSET 'UTF-8'");
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.neoaigc.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 对比两次JMH运行的JSON结果（-rf json），列出每个基准的变化
+ * 平均时间类结果变大、吞吐量类结果变小超过阈值，且超出两次结果误差之和时视为退化，有退化时以状态码1退出。
+ *
+ * 用法：BenchmarkComparator <基线结果> <本次结果> [阈值百分比，默认10]
+ */
+public class BenchmarkComparator {
+
+    private record Result(String key, String mode, double score, double error, String unit) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("用法: BenchmarkComparator <baseline.json> <current.json> [threshold%]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+        Map<String, Result> baseline = read(new File(args[0]));
+        Map<String, Result> current = read(new File(args[1]));
+
+        int regressions = 0;
+        System.out.printf("%-70s %14s %14s %9s%n", "Benchmark", "Baseline", "Current", "Change");
+        for (Result now : current.values()) {
+            Result before = baseline.get(now.key());
+            if (before == null || !before.unit().equals(now.unit())) {
+                System.out.printf("%-70s %14s %14.3f %9s  %s%n", now.key(), "-", now.score(), "-", now.unit());
+                continue;
+            }
+            double change = (now.score() - before.score()) / before.score() * 100;
+            // 平均时间越小越好，吞吐量越大越好
+            boolean higherIsWorse = !now.mode().equals("thrpt");
+            double worse = higherIsWorse ? change : -change;
+            boolean regressed = worse > threshold
+                    && Math.abs(now.score() - before.score()) > before.error() + now.error();
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-70s %14.3f %14.3f %+8.1f%%  %s%s%n", now.key(), before.score(), now.score(), change,
+                    now.unit(), regressed ? "  REGRESSION" : "");
+        }
+        for (String key : baseline.keySet()) {
+            if (!current.containsKey(key)) {
+                System.out.printf("%-70s %14.3f %14s %9s%n", key, baseline.get(key).score(), "-", "-");
+            }
+        }
+
+        if (regressions > 0) {
+            System.out.printf("%d个基准退化超过%.0f%%%n", regressions, threshold);
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, Result> read(File file) throws Exception {
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (JsonNode run : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(run.path("benchmark").asText()
+                    .replace("com.neoaigc.bench.", ""));
+            JsonNode params = run.path("params");
+            if (params.isObject()) {
+                key.append(' ');
+                Iterator<Map.Entry<String, JsonNode>> fields = params.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> param = fields.next();
+                    key.append(param.getKey()).append('=').append(param.getValue().asText());
+                    if (fields.hasNext()) {
+                        key.append(',');
+                    }
+                }
+            }
+            JsonNode metric = run.path("primaryMetric");
+            double error = metric.path("scoreError").asDouble(0);
+            results.put(key.toString(), new Result(key.toString(), run.path("mode").asText(),
+                    metric.path("score").asDouble(), Double.isNaN(error) ? 0 : error, metric.path("scoreUnit").asText()));
+        }
+        return results;
+    }
+}
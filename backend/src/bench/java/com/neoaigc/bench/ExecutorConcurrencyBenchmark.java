@@ -0,0 +1,61 @@
+package com.neoaigc.bench;
+
+import com.neoaigc.config.AsyncConfig;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * taskExecutor并发能力对比：平台线程池 vs 虚拟线程
+ * 每次生成用Thread.sleep模拟阻塞的AI服务调用，统计单节点同时在途的生成数量与吞吐
+ *
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="生成数 延迟毫秒"
+ */
+public class ExecutorConcurrencyBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int generations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        long latencyMillis = args.length > 1 ? Long.parseLong(args[1]) : 500;
+
+        AsyncConfig config = new AsyncConfig();
+        System.out.printf("generations=%d, simulated provider latency=%dms%n", generations, latencyMillis);
+        System.out.printf("%-10s %12s %12s %14s%n", "executor", "peak", "wall(ms)", "throughput/s");
+
+        run("platform", config.taskExecutor(), generations, latencyMillis);
+        run("virtual", config.virtualTaskExecutor(), generations, latencyMillis);
+    }
+
+    private static void run(String name, Executor executor, int generations, long latencyMillis) throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(generations);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < generations; i++) {
+            executor.execute(() -> {
+                int current = inFlight.incrementAndGet();
+                peak.accumulateAndGet(current, Math::max);
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    inFlight.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        System.out.printf("%-10s %12d %12d %14.1f%n", name, peak.get(), wallMillis,
+                generations * 1000.0 / wallMillis);
+
+        if (executor instanceof DisposableBean disposable) {
+            disposable.destroy();
+        }
+    }
+}
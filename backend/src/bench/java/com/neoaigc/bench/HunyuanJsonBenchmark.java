@@ -0,0 +1,68 @@
+package com.neoaigc.bench;
+
+import com.neoaigc.service.HunyuanAiService;
+import com.neoaigc.util.HttpClientUtil;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 腾讯混元接口调用的本地开销：组装请求体并用fastjson2序列化、TC3签名、解析响应JSON取结果地址
+ * HTTP请求由固定响应代替，不含网络耗时；关闭模拟模式走真实请求路径。
+ *
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=org.openjdk.jmh.Main -Dbenchmark.args=HunyuanJsonBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HunyuanJsonBenchmark {
+
+    private static final String RESPONSE = "{\"Response\":{"
+            + "\"ResultImage\":\"https://aiart-1258344699.cos.ap-guangzhou.myqcloud.com/text_to_img/20240501/"
+            + "b4c3f5e0-9a0e-4b8f-8c1d-2f6c0d1e7a35.png?q-sign-algorithm=sha1&q-ak=AKIDexample&q-sign-time=1714536000%3B1714539600"
+            + "&q-key-time=1714536000%3B1714539600&q-header-list=host&q-url-param-list=&q-signature=0f1e2d3c4b5a69788796a5b4c3d2e1f0\","
+            + "\"ResultDetails\":[\"Success\"],"
+            + "\"RequestId\":\"6a4f0c2e-3b1d-4e5f-9a8b-7c6d5e4f3a2b\"}}";
+
+    private static final String PROMPT = "一只戴着宇航员头盔的橘猫坐在月球表面，背景是地球，写实风格，电影光效，8k";
+
+    private HunyuanAiService service;
+
+    /**
+     * 不发请求，直接返回固定响应
+     */
+    static class CannedHttpClient extends HttpClientUtil {
+        @Override
+        public String post(String url, String jsonBody, Map<String, String> headers, Duration timeout) {
+            return RESPONSE;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        service = new HunyuanAiService();
+        ReflectionTestUtils.setField(service, "secretId", "AKIDz8krbsJ5yKBZQpn74WFkmLPx3EXAMPLE");
+        ReflectionTestUtils.setField(service, "secretKey", "Gu5t9xGARNpq86cd98joQYCN3EXAMPLE");
+        ReflectionTestUtils.setField(service, "region", "ap-guangzhou");
+        ReflectionTestUtils.setField(service, "endpoint", "https://hunyuan.tencentcloudapi.com");
+        ReflectionTestUtils.setField(service, "timeout", 30000L);
+        ReflectionTestUtils.setField(service, "mockEnabled", false);
+        ReflectionTestUtils.setField(service, "httpClient", new CannedHttpClient());
+    }
+
+    @Benchmark
+    public String textToImage() {
+        return service.textToImage(PROMPT);
+    }
+
+    @Benchmark
+    public String imageToImage() {
+        return service.imageToImage("https://example.com/uploads/2024/05/01/input.png", PROMPT);
+    }
+}
@@ -0,0 +1,74 @@
+package com.neoaigc.bench;
+
+import com.neoaigc.security.JwtTokenProvider;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每个认证请求的JWT处理开销
+ * legacy：原实现，每次重建密钥和解析器，validateToken与getUserIdFromToken各验签一次
+ * validate：预构建解析器，只校验签名和过期时间
+ * singleParse：预构建解析器，只验签一次
+ * cached：验证结果按token摘要缓存，命中时不验签
+ *
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=org.openjdk.jmh.Main -Dbenchmark.args=JwtAuthenticationBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtAuthenticationBenchmark {
+
+    private static final String SECRET = "your-jwt-secret-key-at-least-256-bits-long-for-security-please-change-this-in-production";
+
+    private JwtTokenProvider provider;
+
+    private String token;
+
+    @Setup
+    public void setup() {
+        provider = new JwtTokenProvider();
+        ReflectionTestUtils.setField(provider, "secret", SECRET);
+        ReflectionTestUtils.setField(provider, "expiration", 604800000L);
+        ReflectionTestUtils.setField(provider, "cacheMaxSize", 10000L);
+        ReflectionTestUtils.setField(provider, "cacheMaxTtlMillis", 600000L);
+        provider.init();
+        token = provider.generateToken("10001");
+    }
+
+    @Benchmark
+    public String legacy() {
+        Jwts.parserBuilder()
+                .setSigningKey(Keys.hmacShaKeyFor(SECRET.getBytes()))
+                .build()
+                .parseClaimsJws(token);
+        Claims claims = Jwts.parserBuilder()
+                .setSigningKey(Keys.hmacShaKeyFor(SECRET.getBytes()))
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+        return claims.getSubject();
+    }
+
+    @Benchmark
+    public boolean validate() {
+        return provider.validateToken(token);
+    }
+
+    @Benchmark
+    public String singleParse() {
+        return provider.getUserIdFromToken(token);
+    }
+
+    @Benchmark
+    public String cached() {
+        return provider.resolveUserId(token);
+    }
+}
@@ -0,0 +1,75 @@
+package com.neoaigc.bench;
+
+import com.neoaigc.security.JwtAuthenticationFilter;
+import com.neoaigc.security.JwtTokenProvider;
+import jakarta.servlet.FilterChain;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JwtAuthenticationFilter每个请求的开销：取Authorization头、解析token（命中验证缓存）、设置和清除SecurityContext
+ * authenticated：携带有效token的请求；anonymous：未携带token的请求（登录、模板列表等公开接口）
+ *
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=org.openjdk.jmh.Main -Dbenchmark.args=JwtAuthenticationFilterBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtAuthenticationFilterBenchmark {
+
+    private static final String SECRET = "your-jwt-secret-key-at-least-256-bits-long-for-security-please-change-this-in-production";
+
+    private JwtAuthenticationFilter filter;
+
+    private MockHttpServletRequest authenticatedRequest;
+
+    private MockHttpServletRequest anonymousRequest;
+
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+    // MockFilterChain只能调用一次，这里用lambda代替；返回过滤器设置的认证主体，避免被优化掉
+    private Object principal;
+
+    private final FilterChain chain = (request, response) ->
+            principal = SecurityContextHolder.getContext().getAuthentication() == null
+                    ? null : SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+
+    @Setup
+    public void setup() {
+        JwtTokenProvider provider = new JwtTokenProvider();
+        ReflectionTestUtils.setField(provider, "secret", SECRET);
+        ReflectionTestUtils.setField(provider, "expiration", 604800000L);
+        ReflectionTestUtils.setField(provider, "cacheMaxSize", 10000L);
+        ReflectionTestUtils.setField(provider, "cacheMaxTtlMillis", 600000L);
+        provider.init();
+
+        filter = new JwtAuthenticationFilter();
+        ReflectionTestUtils.setField(filter, "tokenProvider", provider);
+        ReflectionTestUtils.setField(filter, "header", "Authorization");
+        ReflectionTestUtils.setField(filter, "prefix", "Bearer");
+
+        authenticatedRequest = new MockHttpServletRequest("GET", "/api/task/list");
+        authenticatedRequest.addHeader("Authorization", "Bearer " + provider.generateToken("10001"));
+        anonymousRequest = new MockHttpServletRequest("GET", "/api/template/list");
+    }
+
+    @Benchmark
+    public Object authenticated() throws Exception {
+        filter.doFilter(authenticatedRequest, response, chain);
+        return principal;
+    }
+
+    @Benchmark
+    public Object anonymous() throws Exception {
+        filter.doFilter(anonymousRequest, response, chain);
+        return principal;
+    }
+}
@@ -0,0 +1,372 @@
+package com.neoaigc.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.neoaigc.security.JwtTokenProvider;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 端到端压测：按固定到达速率调用 /task/create，并通过 /task/status 批量轮询直到任务结束
+ * 每个阶段一个到达速率，阶段结束后等待未结束的任务处理完，输出创建接口和任务端到端耗时分位数、吞吐和当前节点的处理中任务数。
+ * 结束速率低于到达速率的90%或等待超时的阶段视为饱和。配合 ai.provider=simulated 使用，见README“压测”一节。
+ *
+ * 到达时间按计划发送，耗时从计划时间算起，服务端变慢时不会因为客户端等待而少算排队时间。
+ * 端到端耗时的精度受轮询间隔限制；阶段时长应远大于任务耗时，否则阶段末尾创建的任务来不及在阶段内结束。
+ *
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.neoaigc.bench.LoadGenerator \
+ *     -Dbenchmark.args="url=http://localhost:8080/api rates=2,5,10,20 stage=60s"
+ */
+public class LoadGenerator {
+
+    private static final String DEFAULT_SECRET = "your-jwt-secret-key-at-least-256-bits-long-for-security-please-change-this-in-production";
+
+    // /task/status 单次最多查询的任务数
+    private static final int STATUS_BATCH_SIZE = 100;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final String baseUrl;
+    private final String type;
+    private final String provider;
+    private final Duration pollInterval;
+    private final List<String> tokens = new ArrayList<>();
+    // 采样 /ops/tasks 用的运维用户，需在后端的 ops.admin-user-ids 中
+    private final String opsUser;
+    private final String opsToken;
+    private volatile boolean opsWarned;
+    private final HttpClient client;
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+
+    // 已创建未结束的任务，按用户分组，轮询时每个用户一次批量查询
+    private final List<Map<Long, Long>> outstanding = new ArrayList<>();
+
+    private final AtomicLong promptSequence = new AtomicLong();
+
+    private volatile Stage current;
+
+    /**
+     * 一个阶段的统计，耗时单位为纳秒
+     */
+    private static class Stage {
+        final double rate;
+        final long startNanos;
+        final long durationNanos;
+        final List<Long> createLatencies = Collections.synchronizedList(new ArrayList<>());
+        final List<Long> taskLatencies = Collections.synchronizedList(new ArrayList<>());
+        final List<Long> pollLatencies = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger sent = new AtomicInteger();
+        final AtomicInteger createErrors = new AtomicInteger();
+        final AtomicInteger completed = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicInteger finishedInWindow = new AtomicInteger();
+        final AtomicInteger pollErrors = new AtomicInteger();
+        final AtomicInteger peakInFlight = new AtomicInteger();
+        final AtomicInteger peakProviderWaiting = new AtomicInteger();
+        volatile int maxInFlight;
+        int backlogAtEnd;
+        long drainNanos;
+        boolean drained;
+
+        Stage(double rate, long startNanos, long durationNanos) {
+            this.rate = rate;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+        }
+
+        double throughput() {
+            return finishedInWindow.get() / (durationNanos / 1e9);
+        }
+
+        boolean saturated() {
+            return !drained || throughput() < rate * 0.9;
+        }
+    }
+
+    LoadGenerator(Map<String, String> options) {
+        this.baseUrl = options.getOrDefault("url", "http://localhost:8080/api");
+        this.type = options.getOrDefault("type", "TEXT_TO_IMAGE");
+        this.provider = options.getOrDefault("provider", "simulated");
+        this.pollInterval = DurationStyle.detectAndParse(options.getOrDefault("poll", "1s"));
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(senders)
+                .build();
+
+        // 用服务端相同的密钥签发token，每个用户的任务分开轮询
+        JwtTokenProvider tokenProvider = new JwtTokenProvider();
+        String secret = options.getOrDefault("jwt-secret", System.getenv().getOrDefault("JWT_SECRET", DEFAULT_SECRET));
+        ReflectionTestUtils.setField(tokenProvider, "secret", secret);
+        ReflectionTestUtils.setField(tokenProvider, "expiration", TimeUnit.DAYS.toMillis(1));
+        ReflectionTestUtils.setField(tokenProvider, "cacheMaxSize", 100L);
+        ReflectionTestUtils.setField(tokenProvider, "cacheMaxTtlMillis", 600000L);
+        tokenProvider.init();
+        opsUser = options.getOrDefault("ops-user", "loadtest-ops");
+        opsToken = tokenProvider.generateToken(opsUser);
+        int users = Integer.parseInt(options.getOrDefault("users", "20"));
+        for (int i = 0; i < users; i++) {
+            tokens.add(tokenProvider.generateToken("loadtest-" + i));
+            outstanding.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                System.err.println("参数格式为 key=value: " + arg);
+                System.exit(2);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        double[] rates = Arrays.stream(options.getOrDefault("rates", "2,5,10,20").split(","))
+                .mapToDouble(Double::parseDouble).toArray();
+        Duration stageDuration = DurationStyle.detectAndParse(options.getOrDefault("stage", "60s"));
+        Duration drainTimeout = DurationStyle.detectAndParse(options.getOrDefault("drain", "120s"));
+        boolean stopOnSaturation = Boolean.parseBoolean(options.getOrDefault("stop-on-saturation", "true"));
+
+        LoadGenerator generator = new LoadGenerator(options);
+        System.out.printf("url=%s type=%s provider=%s users=%d stage=%s drain=%s poll=%s%n", generator.baseUrl,
+                generator.type, generator.provider, generator.tokens.size(), stageDuration, drainTimeout, generator.pollInterval);
+
+        List<Stage> stages = new ArrayList<>();
+        ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor();
+        poller.scheduleWithFixedDelay(generator::poll, 0, generator.pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+        try {
+            for (double rate : rates) {
+                Stage stage = generator.run(rate, stageDuration, drainTimeout);
+                stages.add(stage);
+                printStage(stage);
+                if (stopOnSaturation && stage.saturated()) {
+                    break;
+                }
+            }
+        } finally {
+            poller.shutdownNow();
+            generator.senders.shutdownNow();
+        }
+        printSummary(stages);
+    }
+
+    /**
+     * 按固定间隔发送创建请求，阶段结束后等待已创建的任务结束
+     */
+    private Stage run(double rate, Duration duration, Duration drainTimeout) throws InterruptedException {
+        long intervalNanos = (long) (1e9 / rate);
+        Stage stage = new Stage(rate, System.nanoTime(), duration.toNanos());
+        current = stage;
+        long count = (long) (rate * duration.toSeconds());
+        for (long i = 0; i < count; i++) {
+            long scheduled = stage.startNanos + i * intervalNanos;
+            long delay = scheduled - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            int user = (int) (i % tokens.size());
+            senders.execute(() -> create(stage, user, scheduled));
+        }
+        long end = stage.startNanos + stage.durationNanos;
+        while (System.nanoTime() < end) {
+            LockSupport.parkNanos(end - System.nanoTime());
+        }
+
+        stage.backlogAtEnd = backlog();
+        long drainStart = System.nanoTime();
+        long drainDeadline = drainStart + drainTimeout.toNanos();
+        while ((backlog() > 0 || stage.sent.get() < count) && System.nanoTime() < drainDeadline) {
+            Thread.sleep(pollInterval.toMillis());
+        }
+        stage.drainNanos = System.nanoTime() - drainStart;
+        stage.drained = backlog() == 0 && stage.sent.get() >= count;
+        // 未结束的任务不计入下一阶段
+        outstanding.forEach(Map::clear);
+        return stage;
+    }
+
+    private void create(Stage stage, int user, long scheduledNanos) {
+        // 提示词各不相同，不命中生成结果缓存，也不会被合并
+        String prompt = "load test " + UUID.randomUUID() + " #" + promptSequence.incrementAndGet();
+        String boundary = "----loadtest" + Long.toHexString(System.nanoTime());
+        String body = part(boundary, "type", type) + part(boundary, "prompt", prompt)
+                + part(boundary, "provider", provider) + "--" + boundary + "--\r\n";
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/task/create"))
+                .timeout(Duration.ofSeconds(30))
+                .header("Authorization", "Bearer " + tokens.get(user))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+                .build();
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            stage.createLatencies.add(System.nanoTime() - scheduledNanos);
+            JsonNode json = response.statusCode() == 200 ? objectMapper.readTree(response.body()) : null;
+            if (json == null || !json.path("success").asBoolean() || !json.has("taskId")) {
+                stage.createErrors.incrementAndGet();
+                return;
+            }
+            outstanding.get(user).put(json.get("taskId").asLong(), scheduledNanos);
+        } catch (Exception e) {
+            stage.createLatencies.add(System.nanoTime() - scheduledNanos);
+            stage.createErrors.incrementAndGet();
+        } finally {
+            stage.sent.incrementAndGet();
+        }
+    }
+
+    private static String part(String boundary, String name, String value) {
+        return "--" + boundary + "\r\nContent-Disposition: form-data; name=\"" + name + "\"\r\n\r\n" + value + "\r\n";
+    }
+
+    /**
+     * 批量查询每个用户未结束的任务，并采样当前节点的处理中任务数和服务商排队数
+     */
+    private void poll() {
+        Stage stage = current;
+        if (stage == null) {
+            return;
+        }
+        for (int user = 0; user < tokens.size(); user++) {
+            Map<Long, Long> pending = outstanding.get(user);
+            List<Long> ids = new ArrayList<>(pending.keySet());
+            for (int from = 0; from < ids.size(); from += STATUS_BATCH_SIZE) {
+                List<Long> batch = ids.subList(from, Math.min(from + STATUS_BATCH_SIZE, ids.size()));
+                try {
+                    long start = System.nanoTime();
+                    JsonNode json = post("/task/status", tokens.get(user), objectMapper.writeValueAsString(batch));
+                    stage.pollLatencies.add(System.nanoTime() - start);
+                    for (JsonNode status : json.path("data")) {
+                        String value = status.path("status").asText();
+                        if (value.equals("COMPLETED") || value.equals("FAILED")) {
+                            finished(stage, pending.remove(status.path("id").asLong()), value.equals("COMPLETED"));
+                        }
+                    }
+                } catch (Exception e) {
+                    stage.pollErrors.incrementAndGet();
+                }
+            }
+        }
+        sampleOps(stage);
+    }
+
+    private void finished(Stage stage, Long scheduledNanos, boolean completed) {
+        if (scheduledNanos == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        stage.taskLatencies.add(now - scheduledNanos);
+        (completed ? stage.completed : stage.failed).incrementAndGet();
+        if (now < stage.startNanos + stage.durationNanos) {
+            stage.finishedInWindow.incrementAndGet();
+        }
+    }
+
+    private void sampleOps(Stage stage) {
+        try {
+            JsonNode data = get("/ops/tasks", opsToken).path("data");
+            stage.peakInFlight.accumulateAndGet(data.path("inFlight").asInt(), Math::max);
+            stage.maxInFlight = data.path("maxInFlight").asInt();
+            int waiting = 0;
+            for (JsonNode operation : data.path("providers").path(provider).path("operations")) {
+                waiting += operation.path("waiting").asInt();
+            }
+            stage.peakProviderWaiting.accumulateAndGet(waiting, Math::max);
+        } catch (Exception e) {
+            // 只影响饱和度采样
+            if (!opsWarned) {
+                opsWarned = true;
+                System.err.printf("采样 /ops/tasks 失败(%s)，确认后端 OPS_ADMIN_USER_IDS 包含 %s%n", e.getMessage(), opsUser);
+            }
+        }
+    }
+
+    private JsonNode post(String path, String token, String json) throws Exception {
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json)), token);
+    }
+
+    private JsonNode get(String path, String token) throws Exception {
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + path)).GET(), token);
+    }
+
+    private JsonNode send(HttpRequest.Builder builder, String token) throws Exception {
+        HttpResponse<String> response = client.send(builder
+                .timeout(Duration.ofSeconds(10))
+                .header("Authorization", "Bearer " + token)
+                .build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("HTTP " + response.statusCode());
+        }
+        return objectMapper.readTree(response.body());
+    }
+
+    private int backlog() {
+        return outstanding.stream().mapToInt(Map::size).sum();
+    }
+
+    private static void printStage(Stage stage) {
+        System.out.printf("%n== 到达速率 %.1f/s ==%n", stage.rate);
+        System.out.printf("创建: %d次, 失败%d, 耗时 p50=%s p99=%s max=%s%n", stage.sent.get(), stage.createErrors.get(),
+                millis(stage.createLatencies, 0.5), millis(stage.createLatencies, 0.99), millis(stage.createLatencies, 1));
+        System.out.printf("任务: 完成%d, 失败%d, 阶段内结束速率%.2f/s, 端到端 p50=%s p90=%s p99=%s max=%s%n",
+                stage.completed.get(), stage.failed.get(), stage.throughput(),
+                millis(stage.taskLatencies, 0.5), millis(stage.taskLatencies, 0.9),
+                millis(stage.taskLatencies, 0.99), millis(stage.taskLatencies, 1));
+        System.out.printf("轮询: %d次, 失败%d, 耗时 p50=%s p99=%s%n", stage.pollLatencies.size(), stage.pollErrors.get(),
+                millis(stage.pollLatencies, 0.5), millis(stage.pollLatencies, 0.99));
+        System.out.printf("节点: 处理中峰值%d/%d, 服务商排队峰值%d; 阶段结束时未完成%d, 等待%.1fs%s%n",
+                stage.peakInFlight.get(), stage.maxInFlight, stage.peakProviderWaiting.get(), stage.backlogAtEnd,
+                stage.drainNanos / 1e9, stage.drained ? "" : "（超时）");
+    }
+
+    private static void printSummary(List<Stage> stages) {
+        System.out.printf("%n%8s %10s %10s %10s %10s %10s %8s %10s%n",
+                "rate/s", "done/s", "create p99", "task p50", "task p99", "errors", "inFlight", "saturated");
+        for (Stage stage : stages) {
+            System.out.printf("%8.1f %10.2f %10s %10s %10s %10d %8s %10s%n", stage.rate, stage.throughput(),
+                    millis(stage.createLatencies, 0.99), millis(stage.taskLatencies, 0.5), millis(stage.taskLatencies, 0.99),
+                    stage.createErrors.get() + stage.failed.get(), stage.peakInFlight.get() + "/" + stage.maxInFlight,
+                    stage.saturated() ? "yes" : "no");
+        }
+        stages.stream().filter(Stage::saturated).findFirst().ifPresentOrElse(
+                stage -> System.out.printf("饱和点: %.1f/s%n", stage.rate),
+                () -> System.out.println("各阶段均未饱和"));
+    }
+
+    /**
+     * 最近秩法取分位数
+     */
+    private static String millis(List<Long> samples, double quantile) {
+        long[] sorted;
+        synchronized (samples) {
+            sorted = samples.stream().mapToLong(Long::longValue).sorted().toArray();
+        }
+        if (sorted.length == 0) {
+            return "-";
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return (sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1_000_000) + "ms";
+    }
+}
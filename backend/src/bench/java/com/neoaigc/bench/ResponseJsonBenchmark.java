@@ -0,0 +1,108 @@
+package com.neoaigc.bench;
+
+import com.alibaba.fastjson2.JSON;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.neoaigc.entity.AiTask;
+import com.neoaigc.entity.TaskStatusView;
+import com.neoaigc.entity.TaskSummary;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 控制器返回的 Map<String,Object> 响应的序列化开销
+ * taskList：/task/list 一页20条任务摘要；taskStatus：/task/status 一次查询100个任务状态。
+ * 控制器的返回值由Spring MVC的Jackson转换器写出（jackson*），fastjson2用于服务商接口和认证接口的报文（fastjson*），
+ * 两者都输出UTF-8字节，便于比较。
+ *
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=org.openjdk.jmh.Main -Dbenchmark.args=ResponseJsonBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseJsonBenchmark {
+
+    private ObjectMapper objectMapper;
+
+    private Map<String, Object> taskList;
+
+    private Map<String, Object> taskStatus;
+
+    @Setup
+    public void setup() {
+        // 与Spring Boot自动配置的ObjectMapper一致：注册JavaTimeModule，日期输出为ISO字符串
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+
+        LocalDateTime now = LocalDateTime.of(2024, 5, 1, 12, 0);
+        List<TaskSummary> summaries = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            TaskSummary summary = new TaskSummary();
+            summary.setId(100000L + i);
+            summary.setType(AiTask.TaskType.TEXT_TO_IMAGE);
+            summary.setStatus(AiTask.TaskStatus.COMPLETED);
+            summary.setProvider("tencent");
+            summary.setResultUrl("/uploads/mirror/2024/05/01/" + (100000 + i) + ".png");
+            summary.setItemCount(0);
+            summary.setItemsCompleted(0);
+            summary.setItemsFailed(0);
+            summary.setCreatedAt(now.minusMinutes(i));
+            summary.setUpdatedAt(now.minusMinutes(i).plusSeconds(20));
+            summaries.add(summary);
+        }
+        taskList = new HashMap<>();
+        taskList.put("success", true);
+        taskList.put("data", summaries);
+        taskList.put("hasMore", true);
+        taskList.put("nextCursor", "MjAyNC0wNS0wMVQxMTo0MXwxMDAwMTk");
+        taskList.put("total", 1234);
+
+        List<TaskStatusView> statuses = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            AiTask task = new AiTask();
+            task.setId(200000L + i);
+            task.setUserId("10001");
+            task.setStatus(i % 4 == 0 ? AiTask.TaskStatus.PROCESSING : AiTask.TaskStatus.COMPLETED);
+            task.setResultUrl(i % 4 == 0 ? null : "https://aiart-1258344699.cos.ap-guangzhou.myqcloud.com/result/" + i + ".png");
+            task.setItemCount(0);
+            task.setItemsCompleted(0);
+            task.setItemsFailed(0);
+            task.setUpdatedAt(now.plusSeconds(i));
+            statuses.add(TaskStatusView.of(task));
+        }
+        taskStatus = new HashMap<>();
+        taskStatus.put("success", true);
+        taskStatus.put("data", statuses);
+    }
+
+    @Benchmark
+    public byte[] jacksonTaskList() throws Exception {
+        return objectMapper.writeValueAsBytes(taskList);
+    }
+
+    @Benchmark
+    public byte[] fastjsonTaskList() {
+        return JSON.toJSONBytes(taskList);
+    }
+
+    @Benchmark
+    public byte[] jacksonTaskStatus() throws Exception {
+        return objectMapper.writeValueAsBytes(taskStatus);
+    }
+
+    @Benchmark
+    public byte[] fastjsonTaskStatus() {
+        return JSON.toJSONBytes(taskStatus);
+    }
+}
@@ -0,0 +1,101 @@
+package com.neoaigc.bench;
+
+import com.neoaigc.entity.AiTask;
+import com.neoaigc.mapper.AiTaskMapper;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量创建任务的写入开销：N次自动提交的单条INSERT（每个/task/create一次）与一次JDBC批量执行（/task/batch-create）
+ * 两者都取回生成的ID。数据库配置见 BenchDatabase，H2内存库只反映语句数和驱动开销；
+ * 对真实MySQL运行时在URL上加 rewriteBatchedStatements=true，批量执行被改写为一条多行INSERT，单条写入每条还多一次网络往返和提交。
+ *
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=org.openjdk.jmh.Main -Dbenchmark.args=TaskCreateBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+// 固定堆大小，减少扩容和GC带来的波动
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class TaskCreateBenchmark {
+
+    @Param({"10", "100"})
+    private int tasks;
+
+    private BenchDatabase database;
+
+    private SqlSessionFactory sessionFactory;
+
+    @Setup
+    public void setup() throws Exception {
+        database = BenchDatabase.open();
+        sessionFactory = database.sessionFactory;
+    }
+
+    /**
+     * 每轮迭代后清空写入的任务，表大小不随运行时间增长
+     */
+    @TearDown(Level.Iteration)
+    public void cleanUp() throws Exception {
+        database.execute("DELETE FROM ai_tasks WHERE user_id = 'bench'");
+    }
+
+    @TearDown
+    public void tearDown() {
+        database.close();
+    }
+
+    /**
+     * 与逐个调用/task/create相同：每个任务一条自动提交的INSERT
+     */
+    @Benchmark
+    public long singleInserts() {
+        long lastId = 0;
+        for (AiTask task : newTasks()) {
+            try (SqlSession session = sessionFactory.openSession(true)) {
+                session.getMapper(AiTaskMapper.class).insert(task);
+            }
+            lastId = task.getId();
+        }
+        return lastId;
+    }
+
+    /**
+     * 与/task/batch-create（TaskQueueService.submitAll）相同：一个事务内批量执行
+     */
+    @Benchmark
+    public long batchInsert() {
+        List<AiTask> batch = newTasks();
+        try (SqlSession session = sessionFactory.openSession(ExecutorType.BATCH)) {
+            AiTaskMapper batchMapper = session.getMapper(AiTaskMapper.class);
+            for (AiTask task : batch) {
+                batchMapper.insert(task);
+            }
+            session.flushStatements();
+            session.commit();
+        }
+        return batch.get(batch.size() - 1).getId();
+    }
+
+    private List<AiTask> newTasks() {
+        List<AiTask> batch = new ArrayList<>(tasks);
+        for (int i = 0; i < tasks; i++) {
+            AiTask task = new AiTask();
+            task.setUserId("bench");
+            task.setType(AiTask.TaskType.TEXT_TO_IMAGE);
+            task.setPrompt("A product photo on a white background, variant " + i);
+            task.setProvider("tencent");
+            task.setStatus(AiTask.TaskStatus.PENDING);
+            batch.add(task);
+        }
+        return batch;
+    }
+}
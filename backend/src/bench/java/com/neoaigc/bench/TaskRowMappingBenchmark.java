@@ -0,0 +1,96 @@
+package com.neoaigc.bench;
+
+import com.neoaigc.entity.AiTask;
+import com.neoaigc.entity.TaskSummary;
+import com.neoaigc.mapper.AiTaskMapper;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AiTask行映射为对象的开销
+ * resultMap：按 AiTaskMapper.BaseResultMap 显式映射（findById、lockClaimable使用）；
+ * autoMapping：resultType自动映射同样的列；summaryPage：任务列表实际执行的 findSummaryPage。
+ * 每次调用都新开会话，不命中MyBatis一级缓存。数据库配置见 BenchDatabase。
+ *
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=org.openjdk.jmh.Main -Dbenchmark.args=TaskRowMappingBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class TaskRowMappingBenchmark {
+
+    private static final String USER_ID = "bench-rows";
+
+    private static final String MAPPER = """
+            <mapper namespace="bench">
+                <select id="findWithResultMap" resultMap="com.neoaigc.mapper.AiTaskMapper.BaseResultMap">
+                    SELECT * FROM ai_tasks WHERE user_id = #{userId} ORDER BY id LIMIT #{limit}
+                </select>
+                <select id="findWithAutoMapping" resultType="com.neoaigc.entity.AiTask">
+                    SELECT * FROM ai_tasks WHERE user_id = #{userId} ORDER BY id LIMIT #{limit}
+                </select>
+            </mapper>
+            """;
+
+    @Param({"20", "100"})
+    private int rows;
+
+    private BenchDatabase database;
+
+    @Setup
+    public void setup() throws Exception {
+        database = BenchDatabase.open(MAPPER);
+        database.execute("DELETE FROM ai_tasks WHERE user_id = '" + USER_ID + "'");
+        try (SqlSession session = database.sessionFactory.openSession(ExecutorType.BATCH)) {
+            AiTaskMapper mapper = session.getMapper(AiTaskMapper.class);
+            for (int i = 0; i < rows; i++) {
+                AiTask task = new AiTask();
+                task.setUserId(USER_ID);
+                task.setType(i % 3 == 0 ? AiTask.TaskType.IMAGE_TO_IMAGE : AiTask.TaskType.TEXT_TO_IMAGE);
+                task.setPrompt("A product photo on a white background, soft shadow, studio lighting, variant " + i);
+                task.setImageUrl(i % 3 == 0 ? "/uploads/2024/05/01/input-" + i + ".png" : null);
+                task.setResultUrl("/uploads/mirror/2024/05/01/result-" + i + ".png");
+                task.setStatus(AiTask.TaskStatus.COMPLETED);
+                task.setProvider("tencent");
+                mapper.insert(task);
+            }
+            session.flushStatements();
+            session.commit();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        database.execute("DELETE FROM ai_tasks WHERE user_id = '" + USER_ID + "'");
+        database.close();
+    }
+
+    @Benchmark
+    public List<AiTask> resultMap() {
+        try (SqlSession session = database.sessionFactory.openSession()) {
+            return session.selectList("bench.findWithResultMap", Map.of("userId", USER_ID, "limit", rows));
+        }
+    }
+
+    @Benchmark
+    public List<AiTask> autoMapping() {
+        try (SqlSession session = database.sessionFactory.openSession()) {
+            return session.selectList("bench.findWithAutoMapping", Map.of("userId", USER_ID, "limit", rows));
+        }
+    }
+
+    @Benchmark
+    public List<TaskSummary> summaryPage() {
+        try (SqlSession session = database.sessionFactory.openSession()) {
+            return session.getMapper(AiTaskMapper.class).findSummaryPage(USER_ID, null, null, null, rows);
+        }
+    }
+}
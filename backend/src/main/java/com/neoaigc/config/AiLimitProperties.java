@@ -0,0 +1,62 @@
+package com.neoaigc.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * AI服务限流配置，按服务提供商和操作分别配置并发数与QPS
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ai.limits")
+public class AiLimitProperties {
+
+    /**
+     * 未单独配置的项使用的默认值
+     */
+    private Limit defaults = new Limit();
+
+    /**
+     * 提供商 -> 操作(text-to-image, image-to-image, remove-background, face-swap) -> 限制
+     */
+    private Map<String, Map<String, Limit>> providers = new HashMap<>();
+
+    /**
+     * 合并默认值后得到某个提供商某个操作的限制
+     */
+    public Limit resolve(String provider, String operation) {
+        Limit specific = providers.getOrDefault(provider, Map.of()).get(operation);
+        Limit resolved = new Limit();
+        resolved.setConcurrency(pick(specific == null ? null : specific.getConcurrency(), defaults.getConcurrency(), 10));
+        resolved.setQps(pick(specific == null ? null : specific.getQps(), defaults.getQps(), 5.0));
+        resolved.setBurst(pick(specific == null ? null : specific.getBurst(), defaults.getBurst(), 1));
+        resolved.setMaxWaiting(pick(specific == null ? null : specific.getMaxWaiting(), defaults.getMaxWaiting(), 100));
+        resolved.setWaitTimeout(pick(specific == null ? null : specific.getWaitTimeout(), defaults.getWaitTimeout(), 30000L));
+        return resolved;
+    }
+
+    private static <T> T pick(T specific, T fallback, T builtin) {
+        if (specific != null) {
+            return specific;
+        }
+        return fallback != null ? fallback : builtin;
+    }
+
+    @Data
+    public static class Limit {
+        // 最大并发调用数
+        private Integer concurrency;
+        // 每秒请求数
+        private Double qps;
+        // 突发容量
+        private Integer burst;
+        // 排队等待的最大调用数
+        private Integer maxWaiting;
+        // 排队等待超时（毫秒）
+        private Long waitTimeout;
+    }
+}
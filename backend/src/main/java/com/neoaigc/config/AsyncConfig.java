@@ -1,7 +1,10 @@
 package com.neoaigc.config;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
@@ -10,39 +13,53 @@ import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * 异步任务配置
+ * spring.threads.virtual.enabled=true 时Tomcat与任务线程池均切换为虚拟线程
  */
 @Configuration
 @EnableAsync
 public class AsyncConfig {
 
     /**
-     * 任务处理线程池
+     * 任务处理线程池（平台线程）
      */
     @Bean(name = "taskExecutor")
+    @ConditionalOnThreading(Threading.PLATFORM)
     public Executor taskExecutor() {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        
+
         // 核心线程数
         executor.setCorePoolSize(5);
-        
+
         // 最大线程数
         executor.setMaxPoolSize(20);
-        
+
         // 队列容量
         executor.setQueueCapacity(100);
-        
+
         // 线程名前缀
         executor.setThreadNamePrefix("AiTask-");
-        
+
         // 线程空闲时间（秒）
         executor.setKeepAliveSeconds(60);
-        
+
         // 拒绝策略：当线程池已满且队列已满时，使用当前线程执行任务
         executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
-        
+
         // 初始化线程池
         executor.initialize();
-        
+
+        return executor;
+    }
+
+    /**
+     * 任务处理执行器（虚拟线程）
+     * 任务几乎都阻塞在AI服务调用和数据库IO上，每个任务一个虚拟线程，并发上限由task.queue.max-in-flight控制
+     */
+    @Bean(name = "taskExecutor")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public Executor virtualTaskExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("AiTask-");
+        executor.setVirtualThreads(true);
         return executor;
     }
-}
\ No newline at end of file
+}
@@ -1,30 +1,26 @@
 package com.neoaigc.config;
 
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
-import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import java.io.File;
 
 /**
  * 文件配置
+ * /uploads/** 的访问由UploadFileController处理
  */
 @Configuration
-public class FileConfig implements WebMvcConfigurer {
+public class FileConfig {
 
     @Value("${file.upload-path}")
     private String uploadPath;
 
-    @Override
-    public void addResourceHandlers(ResourceHandlerRegistry registry) {
+    @PostConstruct
+    public void init() {
         // 确保上传目录存在
         File uploadDir = new File(uploadPath);
         if (!uploadDir.exists()) {
             uploadDir.mkdirs();
         }
-        
-        // 配置静态资源映射
-        registry.addResourceHandler("/uploads/**")
-                .addResourceLocations("file:" + uploadPath + "/");
     }
 }
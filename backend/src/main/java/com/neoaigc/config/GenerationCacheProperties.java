@@ -0,0 +1,50 @@
+package com.neoaigc.config;
+
+import com.neoaigc.entity.AiTask;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 生成结果缓存配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "generation.cache")
+public class GenerationCacheProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * 内存层最大条数
+     */
+    private long memoryMaxSize = 10000;
+
+    /**
+     * 未单独配置的任务类型使用的有效期
+     */
+    private Duration defaultTtl = Duration.ofDays(1);
+
+    /**
+     * 任务类型 -> 有效期，设为0表示该类型不缓存
+     */
+    private Map<AiTask.TaskType, Duration> ttl = new EnumMap<>(AiTask.TaskType.class);
+
+    /**
+     * 结果为提供商远程地址（未镜像到本地）时的有效期上限，不超过提供商签名地址的有效期
+     */
+    private Duration remoteTtl = Duration.ofMinutes(50);
+
+    /**
+     * 清理数据库中过期条目的间隔
+     */
+    private Duration purgeInterval = Duration.ofHours(1);
+
+    public Duration resolveTtl(AiTask.TaskType type) {
+        return ttl.getOrDefault(type, defaultTtl);
+    }
+}
@@ -0,0 +1,41 @@
+package com.neoaigc.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 共享HTTP客户端配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "http.client")
+public class HttpClientProperties {
+
+    // 连接池总连接数
+    private int maxTotal = 200;
+
+    // 每个目标主机的默认连接数
+    private int maxPerRoute = 50;
+
+    // 按主机单独设置连接数，key为 scheme://host[:port]
+    private Map<String, Integer> maxPerHost = new HashMap<>();
+
+    // 建立连接超时（毫秒）
+    private long connectTimeout = 5000;
+
+    // 默认响应超时（毫秒），调用方可按请求覆盖
+    private long responseTimeout = 10000;
+
+    // 空闲连接保活时长（毫秒），超过后关闭
+    private long idleTimeout = 60000;
+
+    // 连接最长存活时间（毫秒）
+    private long timeToLive = 300000;
+
+    // I/O线程数，0表示与CPU核数一致
+    private int ioThreads = 0;
+}
@@ -0,0 +1,172 @@
+package com.neoaigc.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.BatchExecutor;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * MyBatis语句耗时统计
+ * 按Mapper语句ID（如 AiTaskMapper.findSummaryPage）记录耗时直方图和返回/影响行数，导出为
+ * mybatis.statement 与 mybatis.statement.rows 指标；超过阈值的语句记录警告日志，只输出参数名不输出参数值。
+ * BATCH执行器中update只是加入批次，实际耗时和影响行数在flushStatements时按语句记录。
+ */
+@Component
+@Intercepts({
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+        @Signature(type = Executor.class, method = "query",
+                args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "query",
+                args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class}),
+        @Signature(type = Executor.class, method = "flushStatements", args = {})
+})
+public class MybatisMetricsInterceptor implements Interceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(MybatisMetricsInterceptor.class);
+
+    // 慢SQL日志中SQL文本的最大长度
+    private static final int MAX_SQL_LENGTH = 500;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${db.slow-query-threshold:200ms}")
+    private Duration slowQueryThreshold;
+
+    // 语句ID -> 指标，避免每次执行都按标签查找
+    private final Map<String, StatementMeters> meters = new ConcurrentHashMap<>();
+
+    private record StatementMeters(Timer success, Timer error, DistributionSummary rows) {
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        if (invocation.getMethod().getName().equals("flushStatements")) {
+            return interceptFlush(invocation);
+        }
+
+        MappedStatement statement = (MappedStatement) invocation.getArgs()[0];
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = invocation.proceed();
+        } catch (Throwable e) {
+            meters(statement.getId()).error().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+        if (result instanceof Integer count && count == BatchExecutor.BATCH_UPDATE_RETURN_VALUE) {
+            // 加入批次，未执行
+            return result;
+        }
+        long elapsed = System.nanoTime() - start;
+        long rows = result instanceof List<?> list ? list.size() : result instanceof Integer count ? count : 0;
+        record(statement, elapsed, rows, invocation.getArgs()[1]);
+        return result;
+    }
+
+    private Object interceptFlush(Invocation invocation) throws Throwable {
+        long start = System.nanoTime();
+        Object result = invocation.proceed();
+        long elapsed = System.nanoTime() - start;
+        if (result instanceof List<?> results) {
+            for (Object item : results) {
+                if (item instanceof BatchResult batch) {
+                    long rows = 0;
+                    for (int count : batch.getUpdateCounts()) {
+                        rows += Math.max(count, 0);
+                    }
+                    // 整个批次一次执行，耗时记录为一个样本
+                    List<Object> parameters = batch.getParameterObjects();
+                    record(batch.getMappedStatement(), elapsed, rows, parameters.isEmpty() ? null : parameters.get(0));
+                }
+            }
+        }
+        return result;
+    }
+
+    private void record(MappedStatement statement, long elapsedNanos, long rows, Object parameter) {
+        StatementMeters statementMeters = meters(statement.getId());
+        statementMeters.success().record(elapsedNanos, TimeUnit.NANOSECONDS);
+        statementMeters.rows().record(rows);
+        if (elapsedNanos >= slowQueryThreshold.toNanos()) {
+            logSlow(statement, elapsedNanos, rows, parameter);
+        }
+    }
+
+    /**
+     * 参数中包含提示词、用户ID等内容，日志只输出参数名
+     */
+    private void logSlow(MappedStatement statement, long elapsedNanos, long rows, Object parameter) {
+        String sql;
+        String parameters;
+        try {
+            BoundSql boundSql = statement.getBoundSql(parameter);
+            sql = boundSql.getSql().replaceAll("\\s+", " ").trim();
+            if (sql.length() > MAX_SQL_LENGTH) {
+                sql = sql.substring(0, MAX_SQL_LENGTH) + "...";
+            }
+            parameters = boundSql.getParameterMappings().stream()
+                    .map(ParameterMapping::getProperty)
+                    .map(name -> name + "=?")
+                    .collect(Collectors.joining(", ", "[", "]"));
+        } catch (Exception e) {
+            sql = "(unavailable)";
+            parameters = "[]";
+        }
+        logger.warn("慢SQL {} 耗时{}ms，{}行: {} 参数: {}",
+                statement.getId(), elapsedNanos / 1_000_000, rows, sql, parameters);
+    }
+
+    private StatementMeters meters(String statementId) {
+        StatementMeters existing = meters.get(statementId);
+        if (existing != null) {
+            return existing;
+        }
+        // 去掉包名，标签形如 AiTaskMapper.findById
+        String name = statementId.substring(statementId.lastIndexOf('.', statementId.lastIndexOf('.') - 1) + 1);
+        return meters.computeIfAbsent(statementId, id -> new StatementMeters(
+                timer(name, "success", true),
+                timer(name, "error", false),
+                // 行数只需要大致分布，用固定的几个桶控制时间序列数量
+                DistributionSummary.builder("mybatis.statement.rows")
+                        .description("Rows returned or affected per mapped statement")
+                        .tag("statement", name)
+                        .serviceLevelObjectives(1, 10, 100, 1000, 10000)
+                        .register(meterRegistry)));
+    }
+
+    private Timer timer(String name, String outcome, boolean histogram) {
+        return Timer.builder("mybatis.statement")
+                .description("Execution time per mapped statement")
+                .tag("statement", name)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram(histogram)
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(meterRegistry);
+    }
+}
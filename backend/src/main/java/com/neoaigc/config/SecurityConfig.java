@@ -2,6 +2,9 @@ package com.neoaigc.config;
 
 import com.neoaigc.security.JwtAuthenticationFilter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.boot.actuate.metrics.export.prometheus.PrometheusScrapeEndpoint;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -36,7 +39,12 @@ public class SecurityConfig {
             // 授权配置
             .authorizeHttpRequests(auth -> auth
                 // 允许匿名访问的端点
-                .requestMatchers("/auth/wechat/**", "/template/**", "/error").permitAll()
+                // 上传文件的路径为内容哈希或随机UUID，无法猜测，允许浏览器和CDN直接缓存
+                .requestMatchers("/auth/wechat/**", "/template/**", "/uploads/**", "/error").permitAll()
+                // 监控端点供Prometheus抓取，只在不对外发布的管理端口（management.server.port）上提供
+                .requestMatchers(EndpointRequest.to(HealthEndpoint.class, PrometheusScrapeEndpoint.class)).permitAll()
+                // 运维接口只对 ops.admin-user-ids 中的用户开放
+                .requestMatchers("/ops/**").hasRole("ADMIN")
                 // 其他需要认证
                 .anyRequest().authenticated()
             )
@@ -53,8 +61,8 @@ public class SecurityConfig {
         // 当前使用通配符是为了开发方便
         configuration.setAllowedOriginPatterns(Arrays.asList("*"));
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS"));
-        configuration.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type", "Accept", "Origin"));
-        configuration.setExposedHeaders(Arrays.asList("Authorization"));
+        configuration.setAllowedHeaders(Arrays.asList("Authorization", "Content-Type", "Accept", "Origin", "Range", "If-None-Match", "If-Range"));
+        configuration.setExposedHeaders(Arrays.asList("Authorization", "ETag", "Content-Range", "Accept-Ranges"));
         configuration.setAllowCredentials(true);
         configuration.setMaxAge(3600L);
 
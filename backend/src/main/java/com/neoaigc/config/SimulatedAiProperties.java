@@ -0,0 +1,83 @@
+package com.neoaigc.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 模拟AI服务配置，用于压测和容量评估
+ * 调用耗时服从按p50、p99拟合的对数正态分布，可叠加帕累托分布的长尾；另可配置错误率和限流响应。
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "ai.simulated")
+public class SimulatedAiProperties {
+
+    /**
+     * 未单独配置的操作使用的耗时分布
+     */
+    private Latency latency = Latency.of(Duration.ofSeconds(2), Duration.ofSeconds(8));
+
+    /**
+     * 操作(text-to-image, image-to-image, remove-background, face-swap) -> 耗时分布
+     */
+    private Map<String, Latency> operations = new HashMap<>();
+
+    /**
+     * 落入长尾的调用比例，长尾耗时从p99开始服从帕累托分布
+     */
+    private double tailRate = 0;
+
+    /**
+     * 长尾的帕累托形状参数，越小尾部越重
+     */
+    private double tailAlpha = 1.5;
+
+    /**
+     * 单次调用耗时上限
+     */
+    private Duration maxLatency = Duration.ofMinutes(2);
+
+    /**
+     * 调用失败的比例，失败在耗时结束后返回
+     */
+    private double errorRate = 0;
+
+    /**
+     * 立即返回限流响应的比例
+     */
+    private double throttleRate = 0;
+
+    /**
+     * 服务商侧每个操作的QPS上限，超出时返回限流响应；0为不限制
+     */
+    private double qps = 0;
+
+    public Latency resolve(String operation) {
+        Latency specific = operations.get(operation);
+        if (specific == null) {
+            return latency;
+        }
+        return Latency.of(specific.getP50() != null ? specific.getP50() : latency.getP50(),
+                specific.getP99() != null ? specific.getP99() : latency.getP99());
+    }
+
+    @Data
+    public static class Latency {
+        // 中位耗时
+        private Duration p50;
+        // 99分位耗时，不大于p50时每次调用耗时固定为p50
+        private Duration p99;
+
+        static Latency of(Duration p50, Duration p99) {
+            Latency latency = new Latency();
+            latency.setP50(p50);
+            latency.setP99(p99);
+            return latency;
+        }
+    }
+}
@@ -1,8 +1,8 @@
 package com.neoaigc.controller;
 
 import com.neoaigc.entity.User;
-import com.neoaigc.mapper.UserMapper;
 import com.neoaigc.security.JwtTokenProvider;
+import com.neoaigc.service.UserService;
 import com.neoaigc.util.HttpClientUtil;
 import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONObject;
@@ -22,11 +22,14 @@ import java.util.Map;
 public class AuthController {
 
     @Autowired
-    private UserMapper userMapper;
+    private UserService userService;
 
     @Autowired
     private JwtTokenProvider tokenProvider;
 
+    @Autowired
+    private HttpClientUtil httpClient;
+
     @Value("${wechat.app-id}")
     private String appId;
 
@@ -68,7 +71,7 @@ public class AuthController {
                     "https://api.weixin.qq.com/sns/oauth2/access_token?appid=%s&secret=%s&code=%s&grant_type=authorization_code",
                     appId, appSecret, code);
             
-            String tokenResponse = HttpClientUtil.get(tokenUrl);
+            String tokenResponse = httpClient.get(tokenUrl);
             JSONObject tokenJson = JSON.parseObject(tokenResponse);
 
             if (tokenJson.containsKey("errcode")) {
@@ -83,23 +86,23 @@ public class AuthController {
                     "https://api.weixin.qq.com/sns/userinfo?access_token=%s&openid=%s",
                     accessToken, openId);
             
-            String userInfoResponse = HttpClientUtil.get(userInfoUrl);
+            String userInfoResponse = httpClient.get(userInfoUrl);
             JSONObject userInfo = JSON.parseObject(userInfoResponse);
 
             // 3. 查找或创建用户
-            User user = userMapper.findByOpenId(openId);
+            User user = userService.findByOpenId(openId);
             if (user == null) {
                 user = new User();
                 user.setOpenId(openId);
                 user.setNickname(userInfo.getString("nickname"));
                 user.setAvatar(userInfo.getString("headimgurl"));
                 user.setBalance(100);
-                userMapper.insert(user);
+                userService.insert(user);
             } else {
                 // 更新用户信息
                 user.setNickname(userInfo.getString("nickname"));
                 user.setAvatar(userInfo.getString("headimgurl"));
-                userMapper.update(user);
+                userService.update(user);
             }
 
             // 4. 生成JWT Token
@@ -135,7 +138,7 @@ public class AuthController {
             return result;
         }
 
-        User user = userMapper.findById(Long.valueOf(userId));
+        User user = userService.findById(Long.valueOf(userId));
         
         Map<String, Object> result = new HashMap<>();
         result.put("success", true);
@@ -0,0 +1,113 @@
+package com.neoaigc.controller;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.neoaigc.service.AiServiceRegistry;
+import com.neoaigc.service.DerivativeService;
+import com.neoaigc.service.GenerationCacheService;
+import com.neoaigc.service.GuardedAiService;
+import com.neoaigc.service.ResultMirrorService;
+import com.neoaigc.service.TaskDispatcher;
+import com.neoaigc.service.TaskProcessor;
+import com.neoaigc.service.TaskStatusWriter;
+import com.neoaigc.service.UserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 运维接口，查看进程内缓存、处理中任务等运行状态
+ * 历史趋势见 /actuator/prometheus 指标，这里只返回当前节点的瞬时值
+ */
+@RestController
+@RequestMapping("/ops")
+public class OpsController {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private GenerationCacheService generationCacheService;
+
+    @Autowired
+    private ResultMirrorService resultMirrorService;
+
+    @Autowired
+    private TaskDispatcher taskDispatcher;
+
+    @Autowired
+    private TaskProcessor taskProcessor;
+
+    @Autowired
+    private TaskStatusWriter taskStatusWriter;
+
+    @Autowired
+    private AiServiceRegistry aiServiceRegistry;
+
+    @Autowired
+    private DerivativeService derivativeService;
+
+    /**
+     * 缓存命中统计
+     */
+    @GetMapping("/caches")
+    public Map<String, Object> getCaches() {
+        Map<String, Object> caches = new HashMap<>();
+        caches.put("user", stats(userService.getCacheStats(), userService.getCacheSize()));
+        caches.put("generation", stats(generationCacheService.getCacheStats(), generationCacheService.getCacheSize()));
+
+        Map<String, Object> mirror = new HashMap<>();
+        mirror.put("size", resultMirrorService.getFileCount());
+        mirror.put("bytes", resultMirrorService.getTotalBytes());
+        mirror.put("maxBytes", resultMirrorService.getMaxBytes());
+        mirror.put("pending", resultMirrorService.getPendingCount());
+        caches.put("resultMirror", mirror);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", caches);
+        return result;
+    }
+
+    /**
+     * 当前节点处理中的任务：按提供商和类型的任务数，以及各提供商每个操作占用的并发名额和排队数
+     */
+    @GetMapping("/tasks")
+    public Map<String, Object> getTasks() {
+        Map<String, Map<String, Object>> providers = new LinkedHashMap<>();
+        for (GuardedAiService service : aiServiceRegistry.getAll()) {
+            Map<String, Object> provider = new LinkedHashMap<>();
+            provider.put("tasks", Map.of());
+            provider.put("operations", service.getOperationStats());
+            providers.put(service.getProvider(), provider);
+        }
+        taskDispatcher.getInFlightByProvider().forEach((name, tasks) ->
+                providers.computeIfAbsent(name, key -> new LinkedHashMap<>()).put("tasks", tasks));
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("workerId", taskDispatcher.getWorkerId());
+        data.put("inFlight", taskDispatcher.getInFlightCount());
+        data.put("maxInFlight", taskDispatcher.getMaxInFlight());
+        data.put("providers", providers);
+        data.put("generating", taskProcessor.getGeneratingCount());
+        data.put("coalesced", taskProcessor.getCoalescedCount());
+        data.put("pendingStatusWrites", taskStatusWriter.getPendingCount());
+        data.put("derivativeQueue", derivativeService.getQueueSize());
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", data);
+        return result;
+    }
+
+    private static Map<String, Object> stats(CacheStats stats, long size) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("size", size);
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictionCount", stats.evictionCount());
+        return result;
+    }
+}
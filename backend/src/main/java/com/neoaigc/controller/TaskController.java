@@ -1,24 +1,47 @@
 package com.neoaigc.controller;
 
 import com.neoaigc.entity.AiTask;
+import com.neoaigc.entity.AiTaskItem;
+import com.neoaigc.entity.TaskStatusView;
+import com.neoaigc.entity.TaskSpec;
+import com.neoaigc.entity.TaskSummary;
+import com.neoaigc.mapper.AiTaskItemMapper;
 import com.neoaigc.mapper.AiTaskMapper;
-import com.neoaigc.service.AiService;
+import com.neoaigc.service.BatchMattingService;
+import com.neoaigc.service.DerivativeService;
+import com.neoaigc.service.GenerationCacheService;
+import com.neoaigc.service.ResultMirrorService;
+import com.neoaigc.service.TaskDispatcher;
+import com.neoaigc.service.TaskQueueService;
+import com.neoaigc.service.TaskStatusWriter;
+import com.neoaigc.service.TaskStreamService;
+import com.neoaigc.service.TaskWaitService;
+import com.neoaigc.service.UploadStorageService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import jakarta.servlet.http.HttpServletRequest;
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Objects;
 
 /**
  * AI任务控制器
@@ -34,16 +57,52 @@ public class TaskController {
     private AiTaskMapper taskMapper;
 
     @Autowired
-    private AiService aiService; // 默认AI服务
-    
+    private AiTaskItemMapper taskItemMapper;
+
+    @Autowired
+    private TaskDispatcher taskDispatcher;
+
     @Autowired
-    private AiService tencentAiService; // 腾讯混元AI服务
-    
+    private BatchMattingService batchMattingService;
+
+    @Autowired
+    private TaskQueueService taskQueueService;
+
     @Autowired
-    private AiService aliyunAiService; // 阿里云百炼AI服务
+    private TaskStatusWriter taskStatusWriter;
+
+    @Autowired
+    private TaskStreamService taskStreamService;
+
+    @Autowired
+    private TaskWaitService taskWaitService;
+
+    @Autowired
+    private GenerationCacheService generationCacheService;
+
+    @Autowired
+    private ResultMirrorService resultMirrorService;
+
+    @Autowired
+    private UploadStorageService uploadStorageService;
+
+    @Autowired
+    private DerivativeService derivativeService;
+
+    @Value("${task.wait.max-timeout:60s}")
+    private Duration maxWaitTimeout;
+
+    @Value("${task.status.max-batch-size:100}")
+    private int maxStatusBatchSize;
+
+    @Value("${task.list.max-page-size:100}")
+    private int maxListPageSize;
 
-    @Value("${file.upload-path}")
-    private String uploadPath;
+    @Value("${task.create.max-batch-size:500}")
+    private int maxCreateBatchSize;
+
+    @Value("${task.batch.max-items:500}")
+    private int maxBatchItems;
 
     /**
      * 创建任务
@@ -54,6 +113,7 @@ public class TaskController {
             @RequestParam("prompt") String prompt,
             @RequestParam(value = "file", required = false) MultipartFile file,
             @RequestParam(value = "provider", defaultValue = "tencent") String provider,
+            @RequestParam(value = "forceFresh", defaultValue = "false") boolean forceFresh,
             HttpServletRequest request) {
 
         logger.info("接收到创建任务请求，类型: {}, 用户: {}", type, request.getAttribute("userId"));
@@ -72,7 +132,8 @@ public class TaskController {
             String imageUrl = null;
             if (file != null && !file.isEmpty()) {
                 logger.info("开始上传文件，原始文件名: {}", file.getOriginalFilename());
-                imageUrl = uploadFile(file);
+                imageUrl = uploadStorageService.store(file).url();
+                derivativeService.schedule(imageUrl);
                 logger.info("文件上传成功，保存路径: {}", imageUrl);
             }
 
@@ -83,11 +144,17 @@ public class TaskController {
             task.setPrompt(prompt);
             task.setImageUrl(imageUrl);
             task.setProvider(provider); // 设置AI服务提供商
-            task.setStatus(AiTask.TaskStatus.PENDING);
-            taskMapper.insert(task);
+            task.setForceFresh(forceFresh);
 
-            // 异步执行任务
-            executeTask(task);
+            if (applyCachedResult(task)) {
+                taskMapper.insert(task);
+                logger.info("任务{}命中生成结果缓存", task.getId());
+            } else {
+                taskMapper.insert(task);
+
+                // 任务已持久化到队列，唤醒调度器尽快领取
+                taskDispatcher.wakeUp();
+            }
 
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
@@ -105,12 +172,200 @@ public class TaskController {
         }
     }
 
+    /**
+     * 批量创建任务
+     * 请求体为任务描述数组，一条INSERT写入所有任务后统一唤醒调度器，返回的taskIds与请求顺序一致。
+     * imageUrl只能是之前上传得到的 /uploads/... 地址。
+     */
+    @PostMapping("/batch-create")
+    public Map<String, Object> batchCreateTasks(@RequestBody List<TaskSpec> specs, HttpServletRequest request) {
+        String userId = (String) request.getAttribute("userId");
+        if (userId == null) {
+            return failure("Unauthorized");
+        }
+        if (specs.isEmpty()) {
+            return failure("No tasks");
+        }
+        if (specs.size() > maxCreateBatchSize) {
+            return failure("Too many tasks, max " + maxCreateBatchSize);
+        }
+
+        List<AiTask> tasks = new ArrayList<>(specs.size());
+        for (int i = 0; i < specs.size(); i++) {
+            TaskSpec spec = specs.get(i);
+            AiTask.TaskType taskType;
+            try {
+                taskType = AiTask.TaskType.valueOf(spec.getType());
+            } catch (IllegalArgumentException | NullPointerException e) {
+                return failure("Invalid type at index " + i + ": " + spec.getType());
+            }
+            if (spec.getPrompt() == null) {
+                return failure("Missing prompt at index " + i);
+            }
+            if (spec.getImageUrl() != null && UploadStorageService.sha256FromUrl(spec.getImageUrl()) == null) {
+                return failure("Invalid imageUrl at index " + i);
+            }
+
+            AiTask task = new AiTask();
+            task.setUserId(userId);
+            task.setType(taskType);
+            task.setPrompt(spec.getPrompt());
+            task.setImageUrl(spec.getImageUrl());
+            task.setProvider(spec.getProvider() != null ? spec.getProvider() : "tencent");
+            task.setForceFresh(Boolean.TRUE.equals(spec.getForceFresh()));
+            applyCachedResult(task);
+            tasks.add(task);
+        }
+
+        try {
+            taskQueueService.submitAll(tasks);
+        } catch (Exception e) {
+            logger.error("批量创建任务失败: {}", e.getMessage(), e);
+            return failure("Failed to create tasks: " + e.getMessage());
+        }
+        if (tasks.stream().anyMatch(task -> task.getStatus() == AiTask.TaskStatus.PENDING)) {
+            taskDispatcher.wakeUp();
+        }
+
+        List<Long> taskIds = tasks.stream().map(AiTask::getId).toList();
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("taskIds", taskIds);
+        result.put("message", "Tasks created successfully");
+        logger.info("批量创建任务成功，数量: {}", taskIds.size());
+        return result;
+    }
+
+    /**
+     * 创建批量抠图任务
+     * 一次上传多张图片，作为一个任务并行处理；进度通过任务状态中的itemsCompleted/itemsFailed推送，
+     * 每张图片的结果通过 /task/{id}/items 查询。zip为true时任务结果为打包后的zip地址。
+     */
+    @PostMapping("/batch-matting")
+    public Map<String, Object> createBatchMatting(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam(value = "prompt", defaultValue = "Remove background") String prompt,
+            @RequestParam(value = "provider", defaultValue = "tencent") String provider,
+            @RequestParam(value = "zip", defaultValue = "false") boolean zip,
+            @RequestParam(value = "forceFresh", defaultValue = "false") boolean forceFresh,
+            HttpServletRequest request) {
+
+        String userId = (String) request.getAttribute("userId");
+        if (userId == null) {
+            return failure("Unauthorized");
+        }
+
+        List<MultipartFile> images = files.stream().filter(file -> !file.isEmpty()).toList();
+        if (images.isEmpty()) {
+            return failure("No images uploaded");
+        }
+        if (images.size() > maxBatchItems) {
+            return failure("Too many images, max " + maxBatchItems);
+        }
+
+        try {
+            List<String> imageUrls = new ArrayList<>(images.size());
+            for (MultipartFile image : images) {
+                String imageUrl = uploadStorageService.store(image).url();
+                derivativeService.schedule(imageUrl);
+                imageUrls.add(imageUrl);
+            }
+
+            AiTask task = batchMattingService.create(userId, provider, prompt, imageUrls, forceFresh, zip);
+            taskDispatcher.wakeUp();
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", true);
+            result.put("taskId", task.getId());
+            result.put("itemCount", imageUrls.size());
+            result.put("message", "Task created successfully");
+            logger.info("批量抠图任务创建成功，任务ID: {}，图片数: {}", task.getId(), imageUrls.size());
+            return result;
+
+        } catch (Exception e) {
+            logger.error("创建批量抠图任务失败: {}", e.getMessage(), e);
+            return failure("Failed to create task: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询批量任务每张图片的处理结果
+     */
+    @GetMapping("/{id}/items")
+    public Map<String, Object> getTaskItems(@PathVariable Long id, HttpServletRequest request) {
+        String userId = (String) request.getAttribute("userId");
+        if (userId == null) {
+            return failure("Unauthorized");
+        }
+
+        AiTask task = taskMapper.findById(id);
+        if (task == null || !userId.equals(task.getUserId())) {
+            return failure("Task not found");
+        }
+
+        List<AiTaskItem> items = task.isBatch() ? taskItemMapper.findByTaskId(id) : Collections.emptyList();
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", items);
+        return result;
+    }
+
+    /**
+     * 订阅当前用户所有任务的状态推送（Server-Sent Events）
+     * 事件名为task，数据为任务状态视图
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamTasks(HttpServletRequest request) {
+        String userId = (String) request.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        // 关闭Nginx代理缓冲，事件到达即转发
+        return ResponseEntity.ok()
+                .header("X-Accel-Buffering", "no")
+                .body(taskStreamService.subscribe(userId));
+    }
+
+    /**
+     * 等待任务结束（长轮询）
+     * 任务完成或失败时立即返回；超时返回当前状态，finished为false时客户端可再次调用
+     */
+    @GetMapping("/{id}/wait")
+    public DeferredResult<Map<String, Object>> waitForTask(
+            @PathVariable Long id,
+            @RequestParam(value = "timeout", defaultValue = "30s") String timeout,
+            HttpServletRequest request) {
+
+        String userId = (String) request.getAttribute("userId");
+        if (userId == null) {
+            return immediate(failure("Unauthorized"));
+        }
+
+        Duration waitTimeout;
+        try {
+            // 支持30s、500ms等格式，纯数字按秒计
+            waitTimeout = DurationStyle.detectAndParse(timeout, ChronoUnit.SECONDS);
+        } catch (IllegalArgumentException e) {
+            return immediate(failure("Invalid timeout: " + timeout));
+        }
+        // DeferredResult的超时为0时表示不超时，不接受非正数
+        if (waitTimeout.isNegative() || waitTimeout.isZero()) {
+            return immediate(failure("Invalid timeout: " + timeout));
+        }
+        if (waitTimeout.compareTo(maxWaitTimeout) > 0) {
+            waitTimeout = maxWaitTimeout;
+        }
+
+        DeferredResult<Map<String, Object>> result = taskWaitService.await(id, userId, waitTimeout.toMillis());
+        return result != null ? result : immediate(failure("Task not found"));
+    }
+
     /**
      * 获取任务详情
      */
     @GetMapping("/{id}")
     public Map<String, Object> getTask(@PathVariable Long id) {
-        AiTask task = taskMapper.findById(id);
+        AiTask task = taskStatusWriter.apply(taskMapper.findById(id));
         
         Map<String, Object> result = new HashMap<>();
         if (task != null) {
@@ -123,109 +378,125 @@ public class TaskController {
         return result;
     }
 
+    /**
+     * 批量查询任务状态
+     * 请求体为任务ID数组，只返回属于当前用户的任务，不存在的ID不出现在结果中
+     */
+    @PostMapping("/status")
+    public Map<String, Object> getTaskStatuses(@RequestBody List<Long> ids, HttpServletRequest request) {
+        String userId = (String) request.getAttribute("userId");
+        if (userId == null) {
+            return failure("Unauthorized");
+        }
+
+        List<Long> distinctIds = ids.stream().filter(Objects::nonNull).distinct().toList();
+        if (distinctIds.size() > maxStatusBatchSize) {
+            return failure("Too many task ids, max " + maxStatusBatchSize);
+        }
+
+        List<TaskStatusView> statuses = distinctIds.isEmpty()
+                ? Collections.emptyList()
+                : taskMapper.findStatusByIds(userId, distinctIds);
+        statuses.forEach(taskStatusWriter::apply);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", statuses);
+        return result;
+    }
+
     /**
      * 获取用户任务列表
+     * 按创建时间倒序的游标分页：首页不传cursor，之后传上一页返回的nextCursor，hasMore为false时结束。
+     * total只在首页返回。
      */
     @GetMapping("/list")
     public Map<String, Object> getUserTasks(
             @RequestParam(value = "type", required = false) String type,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "20") int size,
             HttpServletRequest request) {
 
         String userId = (String) request.getAttribute("userId");
         if (userId == null) {
-            Map<String, Object> result = new HashMap<>();
-            result.put("success", false);
-            result.put("message", "Unauthorized");
-            return result;
+            return failure("Unauthorized");
         }
 
-        List<AiTask> tasks;
+        AiTask.TaskType taskType = null;
         if (type != null && !type.isEmpty()) {
-            tasks = taskMapper.findByUserIdAndType(userId, AiTask.TaskType.valueOf(type));
-        } else {
-            tasks = taskMapper.findByUserId(userId);
+            try {
+                taskType = AiTask.TaskType.valueOf(type);
+            } catch (IllegalArgumentException e) {
+                return failure("Invalid type: " + type);
+            }
+        }
+
+        LocalDateTime cursorCreatedAt = null;
+        Long cursorId = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 2);
+                cursorCreatedAt = LocalDateTime.parse(parts[0]);
+                cursorId = Long.parseLong(parts[1]);
+            } catch (RuntimeException e) {
+                return failure("Invalid cursor");
+            }
         }
 
+        int pageSize = Math.max(1, Math.min(size, maxListPageSize));
+        // 多取一条用于判断是否还有下一页
+        List<TaskSummary> tasks = taskMapper.findSummaryPage(userId, taskType, cursorCreatedAt, cursorId, pageSize + 1);
+        boolean hasMore = tasks.size() > pageSize;
+        if (hasMore) {
+            tasks = tasks.subList(0, pageSize);
+        }
+        tasks.forEach(taskStatusWriter::apply);
+
         Map<String, Object> result = new HashMap<>();
         result.put("success", true);
         result.put("data", tasks);
-        result.put("total", tasks.size());
+        result.put("hasMore", hasMore);
+        if (hasMore) {
+            TaskSummary last = tasks.get(tasks.size() - 1);
+            String next = last.getCreatedAt() + "|" + last.getId();
+            result.put("nextCursor", Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString(next.getBytes(StandardCharsets.UTF_8)));
+        }
+        if (cursorId == null) {
+            result.put("total", hasMore ? taskMapper.countByUser(userId, taskType) : tasks.size());
+        }
         return result;
     }
 
     /**
-     * 上传文件
+     * 相同输入已有生成结果时直接标记完成，不进入队列；否则为等待处理
+     * @return 是否命中生成结果缓存
      */
-    private String uploadFile(MultipartFile file) throws IOException {
-        // 验证文件大小
-        long maxSize = 50 * 1024 * 1024; // 50MB
-        if (file.getSize() > maxSize) {
-            throw new IOException("File size exceeds the limit of 50MB");
-        }
-        
-        // 验证文件类型
-        String contentType = file.getContentType();
-        if (contentType == null || !contentType.startsWith("image/")) {
-            throw new IOException("Only image files are allowed");
-        }
-        
-        // 获取文件扩展名
-        String originalFileName = file.getOriginalFilename();
-        String fileExtension = "";
-        if (originalFileName != null && originalFileName.contains(".")) {
-            fileExtension = originalFileName.substring(originalFileName.lastIndexOf("."));
+    private boolean applyCachedResult(AiTask task) {
+        String cachedResultUrl = Boolean.TRUE.equals(task.getForceFresh())
+                ? null
+                : generationCacheService.lookup(task, generationCacheService.keyFor(task));
+        if (cachedResultUrl == null) {
+            task.setStatus(AiTask.TaskStatus.PENDING);
+            return false;
         }
-        
-        // 生成唯一文件名
-        String fileName = UUID.randomUUID().toString() + fileExtension;
-        
-        // 创建上传目录
-        Path uploadDirPath = Paths.get(uploadPath);
-        Files.createDirectories(uploadDirPath);
-        
-        // 保存文件
-        Path filePath = uploadDirPath.resolve(fileName);
-        Files.write(filePath, file.getBytes());
-        
-        // 返回相对路径
-        return "/uploads/" + fileName;
+        // 远程结果已有本地镜像时直接使用本地地址
+        String localCopy = resultMirrorService.localCopy(cachedResultUrl);
+        task.setStatus(AiTask.TaskStatus.COMPLETED);
+        task.setResultUrl(localCopy != null ? localCopy : cachedResultUrl);
+        return true;
     }
 
-    /**
-     * 异步执行任务
-     */
-    @org.springframework.scheduling.annotation.Async("taskExecutor")
-    public void executeTask(AiTask task) {
-        try {
-            // 更新状态为处理中
-            task.setStatus(AiTask.TaskStatus.PROCESSING);
-            taskMapper.update(task);
-
-            // 根据用户选择的AI服务提供商选择对应的服务
-            AiService selectedAiService = aiService; // 默认服务
-            if ("aliyun".equals(task.getProvider())) {
-                selectedAiService = aliyunAiService;
-            } else if ("tencent".equals(task.getProvider())) {
-                selectedAiService = tencentAiService;
-            }
-
-            // 调用AI服务
-            String resultUrl = switch (task.getType()) {
-                case TEXT_TO_IMAGE -> selectedAiService.textToImage(task.getPrompt());
-                case IMAGE_TO_IMAGE -> selectedAiService.imageToImage(task.getImageUrl(), task.getPrompt());
-                case BATCH_MATTING -> selectedAiService.removeBackground(task.getImageUrl());
-                case FACE_SWAP -> selectedAiService.faceSwap(task.getImageUrl(), task.getPrompt());
-            };
-
-            // 更新结果
-            task.setResultUrl(resultUrl);
-            task.setStatus(AiTask.TaskStatus.COMPLETED);
-            taskMapper.update(task);
+    private static Map<String, Object> failure(String message) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", false);
+        result.put("message", message);
+        return result;
+    }
 
-        } catch (Exception e) {
-            task.setStatus(AiTask.TaskStatus.FAILED);
-            task.setErrorMessage(e.getMessage());
-            taskMapper.update(task);
-        }
+    private static DeferredResult<Map<String, Object>> immediate(Map<String, Object> body) {
+        DeferredResult<Map<String, Object>> result = new DeferredResult<>();
+        result.setResult(body);
+        return result;
     }
 }
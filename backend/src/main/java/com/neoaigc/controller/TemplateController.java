@@ -2,10 +2,13 @@ package com.neoaigc.controller;
 
 import com.neoaigc.entity.Template;
 import com.neoaigc.mapper.TemplateMapper;
+import com.neoaigc.service.TemplateCatalog;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -19,32 +22,23 @@ public class TemplateController {
     @Autowired
     private TemplateMapper templateMapper;
 
+    @Autowired
+    private TemplateCatalog templateCatalog;
+
     /**
      * 获取所有模板
      */
     @GetMapping("/list")
-    public Map<String, Object> getAllTemplates() {
-        List<Template> templates = templateMapper.findAll();
-        
-        Map<String, Object> result = new HashMap<>();
-        result.put("success", true);
-        result.put("data", templates);
-        result.put("total", templates.size());
-        return result;
+    public ResponseEntity<byte[]> getAllTemplates() {
+        return cached(templateCatalog.all());
     }
 
     /**
      * 根据类型获取模板
      */
     @GetMapping("/list/type/{type}")
-    public Map<String, Object> getTemplatesByType(@PathVariable Integer type) {
-        List<Template> templates = templateMapper.findByType(type);
-        
-        Map<String, Object> result = new HashMap<>();
-        result.put("success", true);
-        result.put("data", templates);
-        result.put("total", templates.size());
-        return result;
+    public ResponseEntity<byte[]> getTemplatesByType(@PathVariable Integer type) {
+        return cached(templateCatalog.byType(type));
     }
 
     /**
@@ -52,7 +46,11 @@ public class TemplateController {
      */
     @GetMapping("/{id}")
     public Map<String, Object> getTemplateById(@PathVariable Long id) {
-        Template template = templateMapper.findById(id);
+        Template template = templateCatalog.findById(id);
+        if (template == null) {
+            // 已禁用的模板不在目录中
+            template = templateMapper.findById(id);
+        }
         
         Map<String, Object> result = new HashMap<>();
         if (template != null) {
@@ -64,4 +62,16 @@ public class TemplateController {
         }
         return result;
     }
+
+    /**
+     * 返回预序列化的目录响应
+     * 带ETag且请求的If-None-Match匹配时，Spring直接返回304，不写响应体
+     */
+    private static ResponseEntity<byte[]> cached(TemplateCatalog.Entry entry) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(entry.etag())
+                .cacheControl(CacheControl.noCache())
+                .body(entry.body());
+    }
 }
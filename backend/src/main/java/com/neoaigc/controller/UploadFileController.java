@@ -0,0 +1,219 @@
+package com.neoaigc.controller;
+
+import com.neoaigc.service.DerivativeService;
+import com.neoaigc.service.ResultMirrorService;
+import com.neoaigc.service.UploadStorageService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.Globals;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+
+/**
+ * 上传及生成文件的访问
+ * 支持单段Range请求、ETag/Last-Modified条件请求；内容寻址的文件内容不会变化，按immutable长期缓存。
+ * 带variant参数时返回DerivativeService生成的衍生图。
+ * 生成结果的本地镜像已被淘汰时重定向到原始远程地址，同时在后台重新下载。
+ * 运行在Tomcat上时通过sendfile由内核直接从文件发送，否则用FileChannel.transferTo写出。
+ */
+@RestController
+public class UploadFileController {
+
+    private static final String PREFIX = "/uploads/";
+
+    @Autowired
+    private DerivativeService derivativeService;
+
+    @Autowired
+    private ResultMirrorService resultMirrorService;
+
+    @Value("${file.upload-path}")
+    private String uploadPath;
+
+    @Value("${file.serve.immutable-max-age:365d}")
+    private Duration immutableMaxAge;
+
+    @Value("${file.serve.max-age:1h}")
+    private Duration maxAge;
+
+    @RequestMapping(value = "/uploads/**", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void serve(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String path = (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+        Path root = Paths.get(uploadPath).toAbsolutePath().normalize();
+        Path file = root.resolve(path.substring(PREFIX.length())).normalize();
+        // 以点开头的目录存放内部索引，不对外提供
+        if (!file.startsWith(root) || path.contains("/.")) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        String contentHash = UploadStorageService.sha256FromUrl(path);
+        boolean mirrored = ResultMirrorService.isMirrorUrl(path);
+        if (!Files.isRegularFile(file)) {
+            String remoteUrl = mirrored && contentHash != null ? resultMirrorService.recover(contentHash) : null;
+            if (remoteUrl != null) {
+                response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+                response.sendRedirect(remoteUrl);
+            } else {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            }
+            return;
+        }
+        if (mirrored) {
+            resultMirrorService.touch(file);
+        }
+
+        // 内容寻址的文件用内容哈希作强ETag，其他文件用大小和修改时间
+        String tag = contentHash;
+        String cacheControl = contentHash != null
+                ? "public, max-age=" + immutableMaxAge.toSeconds() + ", immutable"
+                : "public, max-age=" + maxAge.toSeconds();
+
+        // 请求衍生图（如?variant=thumb）时返回对应尺寸；尚未生成则提交后台生成，本次返回原图且不缓存
+        String variant = request.getParameter("variant");
+        if (variant != null && contentHash != null && DerivativeService.VARIANTS.containsKey(variant)) {
+            Path derived = derivativeService.find(contentHash, variant);
+            if (derived != null) {
+                file = derived;
+                tag = contentHash + "-" + variant;
+            } else {
+                derivativeService.schedule(path);
+                tag = null;
+                cacheControl = "no-cache";
+            }
+        }
+
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long length = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        String etag = tag != null
+                ? "\"" + tag + "\""
+                : "W/\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return;
+        }
+
+        MediaType mediaType = MediaTypeFactory.getMediaType(file.getFileName().toString())
+                .orElse(MediaType.APPLICATION_OCTET_STREAM);
+        response.setContentType(mediaType.toString());
+
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null && ifRangeMatches(request, etag, lastModified)) {
+            long[] bounds = parseRange(range, length);
+            if (bounds == null) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        long count = end - start + 1;
+        response.setContentLengthLong(count);
+        if ("HEAD".equals(request.getMethod()) || count == 0) {
+            return;
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(Globals.SENDFILE_SUPPORTED_ATTR))) {
+            // 交给Tomcat在请求结束后用sendfile发送，end不包含在内
+            request.setAttribute(Globals.SENDFILE_FILENAME_ATTR, file.toString());
+            request.setAttribute(Globals.SENDFILE_FILE_START_ATTR, start);
+            request.setAttribute(Globals.SENDFILE_FILE_END_ATTR, end + 1);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, out);
+                position += sent;
+                remaining -= sent;
+            }
+        }
+    }
+
+    /**
+     * 没有If-Range或If-Range与当前版本一致时才按Range返回
+     */
+    private static boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // If-Range只允许强比较
+            return !etag.startsWith("W/") && ifRange.equals(etag);
+        }
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 解析单段Range
+     * @return 起止位置（含）；多段或格式不支持时返回空数组，按完整内容返回；范围无法满足时返回null
+     */
+    private static long[] parseRange(String range, long length) {
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return new long[0];
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            long start;
+            long end;
+            if (dash == 0) {
+                // 最后N个字节
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0 || length == 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? length - 1 : Math.min(Long.parseLong(spec.substring(dash + 1)), length - 1);
+            }
+            if (start >= length || start > end) {
+                return null;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.neoaigc.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import java.time.LocalDateTime;
 
 /**
@@ -15,6 +16,16 @@ public class AiTask {
     private TaskStatus status;
     private String errorMessage;
     private String provider; // AI服务提供商
+    @JsonIgnore
+    private String leaseOwner; // 持有租约的工作节点
+    @JsonIgnore
+    private LocalDateTime leaseExpiresAt; // 租约过期时间
+    private Integer attempts; // 已领取次数
+    private Boolean forceFresh; // 跳过生成结果缓存，强制重新生成
+    private Integer itemCount; // 批量任务的子项数，0表示单张图片的任务
+    private Integer itemsCompleted; // 已成功的子项数
+    private Integer itemsFailed; // 已失败的子项数
+    private Boolean bundleZip; // 批量任务完成后把结果打包为zip
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
@@ -105,6 +116,75 @@ public class AiTask {
         this.provider = provider;
     }
 
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public void setLeaseOwner(String leaseOwner) {
+        this.leaseOwner = leaseOwner;
+    }
+
+    public LocalDateTime getLeaseExpiresAt() {
+        return leaseExpiresAt;
+    }
+
+    public void setLeaseExpiresAt(LocalDateTime leaseExpiresAt) {
+        this.leaseExpiresAt = leaseExpiresAt;
+    }
+
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+
+    public Boolean getForceFresh() {
+        return forceFresh;
+    }
+
+    public void setForceFresh(Boolean forceFresh) {
+        this.forceFresh = forceFresh;
+    }
+
+    public Integer getItemCount() {
+        return itemCount;
+    }
+
+    public void setItemCount(Integer itemCount) {
+        this.itemCount = itemCount;
+    }
+
+    public Integer getItemsCompleted() {
+        return itemsCompleted;
+    }
+
+    public void setItemsCompleted(Integer itemsCompleted) {
+        this.itemsCompleted = itemsCompleted;
+    }
+
+    public Integer getItemsFailed() {
+        return itemsFailed;
+    }
+
+    public void setItemsFailed(Integer itemsFailed) {
+        this.itemsFailed = itemsFailed;
+    }
+
+    public Boolean getBundleZip() {
+        return bundleZip;
+    }
+
+    public void setBundleZip(Boolean bundleZip) {
+        this.bundleZip = bundleZip;
+    }
+
+    @JsonIgnore
+    public boolean isBatch() {
+        return itemCount != null && itemCount > 0;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -0,0 +1,20 @@
+package com.neoaigc.entity;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 批量任务中的一张图片
+ */
+@Data
+public class AiTaskItem {
+    private Long id;
+    private Long taskId;
+    private Integer seq;
+    private String imageUrl;
+    private String resultUrl;
+    private AiTask.TaskStatus status;
+    private String errorMessage;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,17 @@
+package com.neoaigc.entity;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 生成结果缓存条目
+ */
+@Data
+public class GenerationCacheEntry {
+    private String cacheKey;
+    private String provider;
+    private AiTask.TaskType type;
+    private String resultUrl;
+    private LocalDateTime expiresAt;
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,16 @@
+package com.neoaigc.entity;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 按状态和类型统计的未结束任务数
+ */
+@Data
+public class TaskQueueDepth {
+    private AiTask.TaskStatus status;
+    private AiTask.TaskType type;
+    private Long count;
+    // 该组中最早进入当前状态的时间（创建或放回队列）
+    private LocalDateTime oldestUpdatedAt;
+}
@@ -0,0 +1,15 @@
+package com.neoaigc.entity;
+
+import lombok.Data;
+
+/**
+ * 批量创建任务时的单个任务描述
+ */
+@Data
+public class TaskSpec {
+    private String type;
+    private String prompt;
+    private String provider;
+    private String imageUrl;
+    private Boolean forceFresh;
+}
@@ -0,0 +1,42 @@
+package com.neoaigc.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 任务状态视图，只包含轮询和推送需要的字段
+ */
+@Data
+public class TaskStatusView {
+    private Long id;
+    @JsonIgnore
+    private String userId;
+    private AiTask.TaskStatus status;
+    private String resultUrl;
+    private String errorMessage;
+    // 批量任务的进度，单张图片的任务为0
+    private Integer itemCount;
+    private Integer itemsCompleted;
+    private Integer itemsFailed;
+    private LocalDateTime updatedAt;
+
+    public static TaskStatusView of(AiTask task) {
+        TaskStatusView view = new TaskStatusView();
+        view.setId(task.getId());
+        view.setUserId(task.getUserId());
+        view.setStatus(task.getStatus());
+        view.setResultUrl(task.getResultUrl());
+        view.setErrorMessage(task.getErrorMessage());
+        view.setItemCount(task.getItemCount());
+        view.setItemsCompleted(task.getItemsCompleted());
+        view.setItemsFailed(task.getItemsFailed());
+        view.setUpdatedAt(task.getUpdatedAt());
+        return view;
+    }
+
+    @JsonIgnore
+    public boolean isFinished() {
+        return status == AiTask.TaskStatus.COMPLETED || status == AiTask.TaskStatus.FAILED;
+    }
+}
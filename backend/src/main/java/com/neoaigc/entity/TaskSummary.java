@@ -0,0 +1,32 @@
+package com.neoaigc.entity;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 任务列表摘要，不包含提示词等大字段
+ */
+@Data
+public class TaskSummary {
+    private Long id;
+    private AiTask.TaskType type;
+    private AiTask.TaskStatus status;
+    private String provider;
+    private String resultUrl;
+    private String errorMessage;
+    private Integer itemCount;
+    private Integer itemsCompleted;
+    private Integer itemsFailed;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+
+    /**
+     * 结果保存在本地时的缩略图地址，列表中用它代替原图
+     */
+    public String getResultThumbnailUrl() {
+        if (resultUrl == null || !resultUrl.startsWith("/uploads/") || resultUrl.endsWith(".zip")) {
+            return null;
+        }
+        return resultUrl + "?variant=thumb";
+    }
+}
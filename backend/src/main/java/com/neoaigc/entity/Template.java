@@ -17,4 +17,5 @@ public class Template {
     private Integer sort;
     private Integer status;
     private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
 }
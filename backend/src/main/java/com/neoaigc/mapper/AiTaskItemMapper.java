@@ -0,0 +1,28 @@
+package com.neoaigc.mapper;
+
+import com.neoaigc.entity.AiTaskItem;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import java.util.List;
+
+/**
+ * 批量任务子项Mapper接口
+ */
+@Mapper
+public interface AiTaskItemMapper {
+
+    /**
+     * 一条语句写入一个批量任务的所有子项
+     */
+    int insertBatch(@Param("items") List<AiTaskItem> items);
+
+    /**
+     * 按序号查询批量任务的所有子项
+     */
+    List<AiTaskItem> findByTaskId(Long taskId);
+
+    /**
+     * 写入子项的处理结果
+     */
+    int finish(AiTaskItem item);
+}
@@ -1,7 +1,12 @@
 package com.neoaigc.mapper;
 
 import com.neoaigc.entity.AiTask;
+import com.neoaigc.entity.TaskQueueDepth;
+import com.neoaigc.entity.TaskStatusView;
+import com.neoaigc.entity.TaskSummary;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -16,7 +21,81 @@ public interface AiTaskMapper {
     
     int update(AiTask task);
     
-    List<AiTask> findByUserId(String userId);
-    
-    List<AiTask> findByUserIdAndType(String userId, AiTask.TaskType type);
+    /**
+     * 按创建时间倒序分页查询用户任务摘要
+     * 游标为上一页最后一条的(createdAt, id)，首页传null
+     */
+    List<TaskSummary> findSummaryPage(@Param("userId") String userId,
+                                      @Param("type") AiTask.TaskType type,
+                                      @Param("cursorCreatedAt") LocalDateTime cursorCreatedAt,
+                                      @Param("cursorId") Long cursorId,
+                                      @Param("limit") int limit);
+
+    long countByUser(@Param("userId") String userId,
+                     @Param("type") AiTask.TaskType type);
+
+    /**
+     * 批量查询用户任务的状态，不属于该用户的ID会被忽略
+     */
+    List<TaskStatusView> findStatusByIds(@Param("userId") String userId,
+                                         @Param("ids") List<Long> ids);
+
+    /**
+     * 查询一组任务中已结束的任务的状态
+     */
+    List<TaskStatusView> findFinishedStatusByIds(@Param("ids") List<Long> ids);
+
+    /**
+     * 查询一组用户在某时间之后有状态变更的任务
+     */
+    List<TaskStatusView> findStatusChangedSince(@Param("userIds") List<String> userIds,
+                                                @Param("since") LocalDateTime since);
+
+    /**
+     * 锁定一批可领取的任务（等待中或租约已过期），已被其他节点锁定的行直接跳过
+     */
+    List<AiTask> lockClaimable(@Param("limit") int limit);
+
+    /**
+     * 按状态和类型统计等待中和处理中的任务数，用于队列深度指标
+     */
+    List<TaskQueueDepth> countOpenTasks();
+
+    /**
+     * 将已锁定的任务标记为处理中并写入租约
+     */
+    int markClaimed(@Param("ids") List<Long> ids,
+                    @Param("leaseOwner") String leaseOwner,
+                    @Param("leaseSeconds") int leaseSeconds);
+
+    /**
+     * 续期当前节点持有的租约
+     */
+    int renewLeases(@Param("ids") List<Long> ids,
+                    @Param("leaseOwner") String leaseOwner,
+                    @Param("leaseSeconds") int leaseSeconds);
+
+    /**
+     * 放回队列并推迟到delaySeconds秒后可再次领取
+     */
+    int release(@Param("id") Long id,
+                @Param("leaseOwner") String leaseOwner,
+                @Param("delaySeconds") int delaySeconds);
+
+    /**
+     * 写入最终状态并释放租约，仅当租约仍由当前节点持有时生效
+     */
+    int finish(AiTask task);
+
+    /**
+     * 写入批量任务的进度，仅当租约仍由当前节点持有时生效
+     */
+    int updateProgress(AiTask task);
+
+    /**
+     * 替换已完成任务的结果地址，仅当当前地址仍为expected时生效
+     */
+    int replaceResultUrl(@Param("id") Long id,
+                         @Param("expected") String expected,
+                         @Param("replacement") String replacement);
 }
@@ -0,0 +1,27 @@
+package com.neoaigc.mapper;
+
+import com.neoaigc.entity.GenerationCacheEntry;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+/**
+ * 生成结果缓存Mapper接口
+ */
+@Mapper
+public interface GenerationCacheMapper {
+
+    /**
+     * 查询未过期的缓存条目
+     */
+    GenerationCacheEntry findValid(String cacheKey);
+
+    /**
+     * 写入缓存条目，已存在时覆盖
+     */
+    int upsert(GenerationCacheEntry entry);
+
+    /**
+     * 删除一批已过期的条目
+     */
+    int purgeExpired(@Param("limit") int limit);
+}
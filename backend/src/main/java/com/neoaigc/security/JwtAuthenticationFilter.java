@@ -7,11 +7,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 import java.io.IOException;
 import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 
 /**
  * JWT认证过滤器
@@ -28,6 +31,10 @@ public class JwtAuthenticationFilter implements Filter {
     @Value("${jwt.prefix}")
     private String prefix;
 
+    // 可访问运维接口的用户ID
+    @Value("${ops.admin-user-ids:}")
+    private Set<String> adminUserIds;
+
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
             throws IOException, ServletException {
@@ -38,15 +45,15 @@ public class JwtAuthenticationFilter implements Filter {
         String token = extractToken(httpRequest);
 
         // 验证token并设置认证上下文
-        if (StringUtils.hasText(token) && tokenProvider.validateToken(token)) {
-            String userId = tokenProvider.getUserIdFromToken(token);
-            
+        String userId = StringUtils.hasText(token) ? tokenProvider.resolveUserId(token) : null;
+        if (userId != null) {
             // 设置用户ID到请求属性中（保持向后兼容）
             httpRequest.setAttribute("userId", userId);
             
-            // 创建认证对象
+            // 创建认证对象，运维用户额外授予ADMIN角色
             Authentication authentication = new UsernamePasswordAuthenticationToken(
-                userId, null, Collections.emptyList()
+                userId, null, adminUserIds.contains(userId)
+                    ? List.of(new SimpleGrantedAuthority("ROLE_ADMIN")) : Collections.emptyList()
             );
             
             // 设置认证上下文
@@ -0,0 +1,61 @@
+package com.neoaigc.service;
+
+import com.neoaigc.config.AiLimitProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * AI服务注册表，按提供商名称返回带限流保护的AI服务
+ * 同一提供商的所有调用共享同一组并发和QPS配额
+ */
+@Component
+public class AiServiceRegistry {
+
+    @Autowired
+    private AiService tencentAiService; // 腾讯混元AI服务
+
+    @Autowired
+    private AiService aliyunAiService; // 阿里云百炼AI服务
+
+    @Autowired(required = false)
+    private SimulatedAiService simulatedAiService; // 模拟AI服务，仅ai.provider=simulated时存在
+
+    @Autowired
+    private AiLimitProperties limitProperties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${ai.provider:tencent}")
+    private String defaultProvider;
+
+    private final Map<String, GuardedAiService> services = new LinkedHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        services.put("tencent", new GuardedAiService("tencent", tencentAiService, limitProperties, meterRegistry));
+        services.put("aliyun", new GuardedAiService("aliyun", aliyunAiService, limitProperties, meterRegistry));
+        if (simulatedAiService != null) {
+            services.put("simulated", new GuardedAiService("simulated", simulatedAiService, limitProperties, meterRegistry));
+        }
+    }
+
+    /**
+     * 根据用户选择的AI服务提供商选择对应的服务，未知提供商使用ai.provider配置的默认服务
+     */
+    public GuardedAiService get(String provider) {
+        GuardedAiService service = provider == null ? null : services.get(provider);
+        return service != null ? service : services.get(defaultProvider);
+    }
+
+    public Collection<GuardedAiService> getAll() {
+        return services.values();
+    }
+}
@@ -1,5 +1,7 @@
 package com.neoaigc.service;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import com.neoaigc.util.HttpClientUtil;
 import com.alibaba.fastjson2.JSON;
@@ -14,6 +16,8 @@ import java.util.Base64;
 @Service("aliyunAiService")
 public class AliyunBailianAiService implements AiService {
 
+    private static final Logger logger = LoggerFactory.getLogger(AliyunBailianAiService.class);
+
     @Value("${aliyun.bailian.access-key-id}")
     private String accessKeyId;
 
@@ -34,7 +38,7 @@ public class AliyunBailianAiService implements AiService {
         try {
             // 由于当前没有可用的阿里云SDK，这里使用模拟数据
             // 实际项目中需要根据阿里云百炼API文档构建HTTP请求
-            System.out.println("调用阿里云百炼AI文生图服务，提示词: " + prompt);
+            logger.debug("调用阿里云百炼AI文生图服务，提示词: {}", prompt);
             
             // 模拟API调用延迟
             Thread.sleep(2000);
@@ -54,7 +58,7 @@ public class AliyunBailianAiService implements AiService {
     public String imageToImage(String imageUrl, String prompt) {
         try {
             // 由于当前没有可用的阿里云SDK，这里使用模拟数据
-            System.out.println("调用阿里云百炼AI图生图服务，图像URL: " + imageUrl + "，提示词: " + prompt);
+            logger.debug("调用阿里云百炼AI图生图服务，图像URL: {}，提示词: {}", imageUrl, prompt);
             
             // 模拟API调用延迟
             Thread.sleep(2000);
@@ -74,7 +78,7 @@ public class AliyunBailianAiService implements AiService {
     public String removeBackground(String imageUrl) {
         try {
             // 由于当前没有可用的阿里云SDK，这里使用模拟数据
-            System.out.println("调用阿里云百炼AI批量抠图服务，图像URL: " + imageUrl);
+            logger.debug("调用阿里云百炼AI批量抠图服务，图像URL: {}", imageUrl);
             
             // 模拟API调用延迟
             Thread.sleep(2000);
@@ -94,7 +98,7 @@ public class AliyunBailianAiService implements AiService {
     public String faceSwap(String imageUrl, String prompt) {
         try {
             // 由于当前没有可用的阿里云SDK，这里使用模拟数据
-            System.out.println("调用阿里云百炼AI人脸替换服务，图像URL: " + imageUrl + "，提示词: " + prompt);
+            logger.debug("调用阿里云百炼AI人脸替换服务，图像URL: {}，提示词: {}", imageUrl, prompt);
             
             // 模拟API调用延迟
             Thread.sleep(3000);
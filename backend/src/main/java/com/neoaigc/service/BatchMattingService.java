@@ -0,0 +1,457 @@
+package com.neoaigc.service;
+
+import com.neoaigc.config.AiLimitProperties;
+import com.neoaigc.entity.AiTask;
+import com.neoaigc.entity.AiTaskItem;
+import com.neoaigc.mapper.AiTaskItemMapper;
+import com.neoaigc.mapper.AiTaskMapper;
+import com.neoaigc.util.HttpClientUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 批量抠图
+ * 一个任务包含多张图片，每张图片是ai_task_items中的一行。处理时按提供商remove-background的并发配额
+ * 并行调用AI服务，结果镜像到本地后写回子项并推送进度。单张失败只记录在子项上，不影响其他图片；
+ * 全部失败时任务失败，否则任务完成，errorMessage中注明失败张数以及打包时缺失的图片。
+ * 租约过期后被重新领取时只处理尚未结束的子项；停机中断时先中断并等待正在处理的图片，
+ * 未结束的子项保持等待状态，任务放回队列。
+ */
+@Service
+public class BatchMattingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchMattingService.class);
+
+    private static final String ARCHIVE_DIR = "archives";
+
+    @Autowired
+    private AiTaskMapper taskMapper;
+
+    @Autowired
+    private AiTaskItemMapper itemMapper;
+
+    @Autowired
+    private TaskQueueService taskQueueService;
+
+    @Autowired
+    private AiServiceRegistry aiServiceRegistry;
+
+    @Autowired
+    private AiLimitProperties limitProperties;
+
+    @Autowired
+    private GenerationCacheService generationCacheService;
+
+    @Autowired
+    private UploadStorageService uploadStorageService;
+
+    @Autowired
+    private ResultMirrorService resultMirrorService;
+
+    @Autowired
+    private HttpClientUtil httpClient;
+
+    @Value("${file.upload-path}")
+    private String uploadPath;
+
+    @Value("${task.queue.throttle-retry-delay:10}")
+    private int throttleRetryDelaySeconds;
+
+    @Value("${task.batch.max-throttle-retries:5}")
+    private int maxThrottleRetries;
+
+    @Value("${task.batch.max-archive-size:2GB}")
+    private DataSize maxArchiveSize;
+
+    @Value("${task.batch.download-timeout:60s}")
+    private Duration downloadTimeout;
+
+    // 子项调用阻塞在AI服务和网络IO上，每个并行槽位一个虚拟线程，并行度由提供商配额决定
+    private ExecutorService itemExecutor;
+
+    @PostConstruct
+    public void init() {
+        itemExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("BatchItem-", 0).factory());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        itemExecutor.shutdownNow();
+    }
+
+    /**
+     * 创建批量任务及其子项
+     */
+    @Transactional
+    public AiTask create(String userId, String provider, String prompt, List<String> imageUrls,
+                         boolean forceFresh, boolean bundleZip) {
+        AiTask task = new AiTask();
+        task.setUserId(userId);
+        task.setType(AiTask.TaskType.BATCH_MATTING);
+        task.setPrompt(prompt);
+        task.setProvider(provider);
+        task.setForceFresh(forceFresh);
+        task.setItemCount(imageUrls.size());
+        task.setItemsCompleted(0);
+        task.setItemsFailed(0);
+        task.setBundleZip(bundleZip);
+        task.setStatus(AiTask.TaskStatus.PENDING);
+        taskMapper.insert(task);
+
+        List<AiTaskItem> items = new ArrayList<>(imageUrls.size());
+        for (int i = 0; i < imageUrls.size(); i++) {
+            AiTaskItem item = new AiTaskItem();
+            item.setTaskId(task.getId());
+            item.setSeq(i);
+            item.setImageUrl(imageUrls.get(i));
+            items.add(item);
+        }
+        itemMapper.insertBatch(items);
+        return task;
+    }
+
+    /**
+     * 处理一个已领取的批量任务，返回时任务已写入最终状态或因租约失效被放弃
+     */
+    public void process(AiTask task) {
+        List<AiTaskItem> items = itemMapper.findByTaskId(task.getId());
+        Queue<AiTaskItem> remaining = new ConcurrentLinkedQueue<>();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        for (AiTaskItem item : items) {
+            if (item.getStatus() == AiTask.TaskStatus.COMPLETED) {
+                completed.incrementAndGet();
+            } else if (item.getStatus() == AiTask.TaskStatus.FAILED) {
+                failed.incrementAndGet();
+            } else {
+                remaining.add(item);
+            }
+        }
+
+        GuardedAiService aiService = aiServiceRegistry.get(task.getProvider());
+        int concurrency = limitProperties.resolve(aiService.getProvider(), GuardedAiService.REMOVE_BACKGROUND).getConcurrency();
+        int width = Math.max(1, Math.min(concurrency, remaining.size()));
+        AtomicBoolean leaseLost = new AtomicBoolean();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Map<Long, Integer> throttled = new ConcurrentHashMap<>();
+
+        // 每个槽位从共享队列中取下一张图片，直到队列为空
+        List<Future<?>> workers = new ArrayList<>(width);
+        Set<Thread> running = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < width; i++) {
+            Runnable worker = () -> {
+                running.add(Thread.currentThread());
+                try {
+                    AiTaskItem item;
+                    while (!leaseLost.get() && !interrupted.get() && (item = remaining.poll()) != null) {
+                        boolean finished = processItem(task, aiService, item, remaining, throttled);
+                        if (Thread.currentThread().isInterrupted()) {
+                            interrupted.set(true);
+                        }
+                        if (!finished) {
+                            continue;
+                        }
+                        if (item.getStatus() == AiTask.TaskStatus.COMPLETED) {
+                            completed.incrementAndGet();
+                        } else {
+                            failed.incrementAndGet();
+                        }
+                        synchronized (task) {
+                            task.setItemsCompleted(completed.get());
+                            task.setItemsFailed(failed.get());
+                            if (!taskQueueService.progress(task)) {
+                                leaseLost.set(true);
+                            }
+                        }
+                    }
+                } finally {
+                    running.remove(Thread.currentThread());
+                }
+            };
+            try {
+                workers.add(itemExecutor.submit(worker));
+            } catch (RejectedExecutionException e) {
+                // 正在停机
+                interrupted.set(true);
+            }
+        }
+
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                interrupted.set(true);
+                break;
+            } catch (ExecutionException e) {
+                logger.error("批量任务{}处理异常: {}", task.getId(), e.getCause().getMessage());
+            }
+        }
+        if (interrupted.get()) {
+            // 先中断仍在处理的图片，等所有槽位退出后才放回队列，否则重新领取后同一张图片可能被处理两次。
+            // 尚未开始运行的槽位被取消后不会执行；刚开始运行的槽位看到interrupted后不会再取图片
+            for (Future<?> worker : workers) {
+                worker.cancel(true);
+            }
+            awaitStopped(running);
+        }
+        if (leaseLost.get()) {
+            logger.warn("批量任务{}的租约已失效，停止处理", task.getId());
+            return;
+        }
+        if (interrupted.get()) {
+            // 已结束的子项已写入，重新领取后只处理剩余的图片
+            requeue(task);
+            return;
+        }
+
+        finish(task, itemMapper.findByTaskId(task.getId()));
+    }
+
+    /**
+     * 处理一张图片
+     * @return 子项已结束返回true；被限流放回队列或线程被中断时返回false，中断时子项不写入
+     */
+    private boolean processItem(AiTask task, AiService aiService, AiTaskItem item,
+                                Queue<AiTaskItem> remaining, Map<Long, Integer> throttled) {
+        boolean forceFresh = Boolean.TRUE.equals(task.getForceFresh());
+        AiTask single = new AiTask();
+        single.setType(AiTask.TaskType.BATCH_MATTING);
+        single.setProvider(task.getProvider());
+        single.setPrompt(task.getPrompt());
+        single.setImageUrl(item.getImageUrl());
+
+        try {
+            // 同一张图片之前处理过时直接复用结果
+            String key = generationCacheService.keyFor(single);
+            String resultUrl = forceFresh ? null : generationCacheService.lookup(single, key);
+            if (resultUrl == null) {
+                // 子项结果不经过任务状态事件，直接镜像到本地，避免保存提供商会过期的地址
+                resultUrl = resultMirrorService.mirrorNow(aiService.removeBackground(item.getImageUrl()));
+                generationCacheService.store(key, single, resultUrl);
+            }
+            item.setStatus(AiTask.TaskStatus.COMPLETED);
+            item.setResultUrl(resultUrl);
+            item.setErrorMessage(null);
+
+        } catch (ProviderThrottledException e) {
+            int retries = throttled.merge(item.getId(), 1, Integer::sum);
+            if (retries <= maxThrottleRetries) {
+                // 配额已满，稍后再试，不算失败
+                sleep(throttleRetryDelaySeconds);
+                remaining.add(item);
+                return false;
+            }
+            item.setStatus(AiTask.TaskStatus.FAILED);
+            item.setErrorMessage(e.getMessage());
+
+        } catch (Exception e) {
+            if (Thread.currentThread().isInterrupted() || isInterruption(e)) {
+                // 停机中断不是图片本身的问题，保持等待状态
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            logger.warn("批量任务{}第{}张图片处理失败: {}", task.getId(), item.getSeq() + 1, e.getMessage());
+            item.setStatus(AiTask.TaskStatus.FAILED);
+            item.setErrorMessage(e.getMessage());
+        }
+
+        itemMapper.finish(item);
+        return true;
+    }
+
+    /**
+     * 写入最终状态：需要打包时结果为zip地址，否则为第一张成功的图片
+     */
+    private void finish(AiTask task, List<AiTaskItem> items) {
+        List<AiTaskItem> succeeded = new ArrayList<>();
+        for (AiTaskItem item : items) {
+            if (item.getStatus() == AiTask.TaskStatus.COMPLETED && item.getResultUrl() != null) {
+                succeeded.add(item);
+            }
+        }
+        int failedCount = items.size() - succeeded.size();
+
+        boolean written;
+        if (succeeded.isEmpty()) {
+            written = taskQueueService.fail(task, "All " + items.size() + " images failed");
+        } else {
+            String resultUrl = succeeded.get(0).getResultUrl();
+            List<String> problems = new ArrayList<>();
+            if (failedCount > 0) {
+                problems.add(failedCount + " of " + items.size() + " images failed");
+            }
+            if (Boolean.TRUE.equals(task.getBundleZip())) {
+                // 打包失败时结果仍为第一张成功的图片，全部结果可通过子项查询
+                List<Integer> missing = new ArrayList<>();
+                try {
+                    resultUrl = bundle(task, succeeded, missing);
+                    if (!missing.isEmpty()) {
+                        problems.add(missing.size() + " results missing from archive: " + missing);
+                    }
+                } catch (Exception e) {
+                    if (isInterruption(e)) {
+                        requeue(task);
+                        return;
+                    }
+                    logger.error("批量任务{}打包失败: {}", task.getId(), e.getMessage());
+                    problems.add("Failed to create archive: " + e.getMessage());
+                }
+            }
+            if (!problems.isEmpty()) {
+                task.setErrorMessage(String.join("; ", problems));
+            }
+            written = taskQueueService.complete(task, resultUrl);
+        }
+        if (!written) {
+            logger.warn("批量任务{}的租约已失效，结果被丢弃", task.getId());
+        }
+    }
+
+    /**
+     * 停机中断时放回队列
+     */
+    private void requeue(AiTask task) {
+        logger.info("批量任务{}被中断，放回队列", task.getId());
+        try {
+            taskQueueService.release(task, 0);
+        } catch (Exception e) {
+            // 停机过程中推送状态可能失败，未放回时租约过期后同样会被重新领取
+            logger.warn("批量任务{}放回队列时出错: {}", task.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 把成功的结果按序号打包成zip，远程结果逐个下载到临时文件后再写入，不在内存中缓存图片
+     * @param missing 输出下载失败、未打包的图片序号（从1开始）
+     */
+    private String bundle(AiTask task, List<AiTaskItem> succeeded, List<Integer> missing) throws IOException {
+        UploadStorageService.Ingest ingest = uploadStorageService.begin(ARCHIVE_DIR, maxArchiveSize.toBytes());
+        Path part = Files.createTempFile("batch-" + task.getId() + "-", ".part");
+        try {
+            try (OutputStream out = Channels.newOutputStream(ingest);
+                 ZipOutputStream zip = new ZipOutputStream(out)) {
+                // 图片本身已压缩，只存储不再压缩
+                zip.setLevel(Deflater.NO_COMPRESSION);
+                for (AiTaskItem item : succeeded) {
+                    // 下载成功后才添加条目，失败的图片不会在zip中留下空文件
+                    Path source;
+                    try {
+                        source = fetch(item.getResultUrl(), part);
+                    } catch (Exception e) {
+                        if (isInterruption(e)) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException("Interrupted while creating archive");
+                        }
+                        logger.warn("批量任务{}第{}张结果下载失败，未打包: {}", task.getId(), item.getSeq() + 1, e.getMessage());
+                        missing.add(item.getSeq() + 1);
+                        continue;
+                    }
+                    zip.putNextEntry(new ZipEntry(String.format("%04d.%s", item.getSeq() + 1, extension(item.getResultUrl()))));
+                    Files.copy(source, zip);
+                    zip.closeEntry();
+                }
+            }
+            if (missing.size() == succeeded.size()) {
+                throw new IOException("None of " + succeeded.size() + " results could be downloaded");
+            }
+            return ingest.commit("zip"::equals, "Invalid archive").url();
+        } finally {
+            Files.deleteIfExists(part);
+            ingest.abort();
+        }
+    }
+
+    /**
+     * 取得结果的本地文件：上传目录中的文件直接返回，远程地址下载到part
+     */
+    private Path fetch(String url, Path part) throws Exception {
+        if (url.startsWith("/uploads/")) {
+            Path root = Paths.get(uploadPath).toAbsolutePath().normalize();
+            Path file = root.resolve(url.substring("/uploads/".length())).normalize();
+            if (!file.startsWith(root) || !Files.isRegularFile(file)) {
+                throw new IOException("File not found: " + url);
+            }
+            return file;
+        }
+        HttpClientUtil.await(httpClient.download(url, part, downloadTimeout), downloadTimeout);
+        return part;
+    }
+
+    private static String extension(String url) {
+        String path = url.replaceFirst("[?#].*$", "");
+        int dot = path.lastIndexOf('.');
+        String extension = dot >= 0 && dot > path.lastIndexOf('/') ? path.substring(dot + 1).toLowerCase() : "";
+        return extension.matches("[a-z0-9]{1,5}") ? extension : "png";
+    }
+
+    /**
+     * 等待子项线程全部退出，等待期间收到的中断在返回前恢复
+     */
+    private static void awaitStopped(Set<Thread> running) {
+        boolean interrupted = Thread.interrupted();
+        for (Thread thread : running) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean isInterruption(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedException || cause instanceof InterruptedIOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void sleep(int seconds) {
+        try {
+            TimeUnit.SECONDS.sleep(seconds);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
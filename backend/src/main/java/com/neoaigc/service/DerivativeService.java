@@ -0,0 +1,276 @@
+package com.neoaigc.service;
+
+import com.neoaigc.entity.TaskStatusView;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 缩略图等衍生图生成
+ * 对内容寻址存储的上传文件和生成结果，在后台线程池中生成固定的几种尺寸，按内容哈希存放在 derived/ 目录下。
+ * 已存在的衍生图不会重复生成，同一文件同时只会被处理一次。请求线程只负责提交，从不生成。
+ */
+@Service
+public class DerivativeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DerivativeService.class);
+
+    /**
+     * 衍生图规格：名称 -> 最长边像素
+     */
+    public static final Map<String, Integer> VARIANTS = Map.of(
+            "thumb", 320,
+            "preview", 1280);
+
+    private static final String DERIVED_DIR = "derived";
+
+    // 超过该像素数的图片不处理，防止解码炸弹
+    private static final long MAX_SOURCE_PIXELS = 50_000_000L;
+
+    private static final float JPEG_QUALITY = 0.82f;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${file.upload-path}")
+    private String uploadPath;
+
+    @Value("${file.derivatives.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.derivatives.threads:2}")
+    private int threads;
+
+    @Value("${file.derivatives.queue-capacity:1000}")
+    private int queueCapacity;
+
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, "Derivative-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+        new ExecutorServiceMetrics(executor, "derivative", Tags.empty()).bindTo(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 提交衍生图生成，队列已满或不是内容寻址的文件时忽略
+     * @param url 访问路径，如 /uploads/ab/cd/abcd...ef.png
+     */
+    public void schedule(String url) {
+        String sha256 = url == null ? null : UploadStorageService.sha256FromUrl(url);
+        if (!enabled || sha256 == null || complete(sha256) || !pending.add(sha256)) {
+            return;
+        }
+        Path source = uploadRoot().resolve(url.substring("/uploads/".length())).normalize();
+        try {
+            executor.execute(() -> {
+                try {
+                    generate(sha256, source);
+                } finally {
+                    pending.remove(sha256);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(sha256);
+            logger.warn("衍生图队列已满，跳过: {}", url);
+        }
+    }
+
+    /**
+     * 查找已生成的衍生图
+     * @return 不存在时返回null
+     */
+    public Path find(String sha256, String variant) {
+        if (!VARIANTS.containsKey(variant)) {
+            return null;
+        }
+        for (String extension : new String[]{"jpg", "png"}) {
+            Path path = derivedPath(sha256, variant, extension);
+            if (Files.isRegularFile(path)) {
+                return path;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 生成结果保存在本地时一并生成衍生图
+     */
+    @EventListener
+    public void onTaskStatus(TaskStatusEvent event) {
+        TaskStatusView status = event.status();
+        if (status.isFinished() && status.getResultUrl() != null) {
+            schedule(status.getResultUrl());
+        }
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    private boolean complete(String sha256) {
+        for (String variant : VARIANTS.keySet()) {
+            if (find(sha256, variant) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void generate(String sha256, Path source) {
+        try {
+            BufferedImage image = read(source);
+            if (image == null) {
+                return;
+            }
+            boolean alpha = image.getColorModel().hasAlpha();
+            String extension = alpha ? "png" : "jpg";
+            for (Map.Entry<String, Integer> variant : VARIANTS.entrySet()) {
+                Path target = derivedPath(sha256, variant.getKey(), extension);
+                if (Files.exists(target)) {
+                    continue;
+                }
+                BufferedImage scaled = scale(image, variant.getValue(), alpha);
+                write(scaled, target, extension);
+            }
+        } catch (Exception e) {
+            logger.warn("生成衍生图失败 {}: {}", source.getFileName(), e.getMessage());
+        }
+    }
+
+    /**
+     * 先读取尺寸再解码，超大图片或无法识别的格式返回null
+     */
+    private static BufferedImage read(Path source) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(source.toFile())) {
+            if (in == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                if ((long) reader.getWidth(0) * reader.getHeight(0) > MAX_SOURCE_PIXELS) {
+                    logger.warn("图片尺寸过大，跳过衍生图: {}", source.getFileName());
+                    return null;
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 按最长边等比缩小，每次最多缩小一半以保证质量；原图不大于目标尺寸时只转换格式
+     */
+    private static BufferedImage scale(BufferedImage source, int maxEdge, boolean alpha) {
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        double ratio = Math.min(1.0, (double) maxEdge / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(height * ratio));
+
+        BufferedImage current = source;
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, type);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private static void write(BufferedImage image, Path target, String extension) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), "derive-", ".tmp");
+        try {
+            ImageWriter writer = ImageIO.getImageWritersByFormatName(extension).next();
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(temp.toFile())) {
+                writer.setOutput(out);
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                if ("jpg".equals(extension)) {
+                    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                    param.setCompressionQuality(JPEG_QUALITY);
+                    param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+                }
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path derivedPath(String sha256, String variant, String extension) {
+        return uploadRoot().resolve(DERIVED_DIR)
+                .resolve(sha256.substring(0, 2))
+                .resolve(sha256.substring(2, 4))
+                .resolve(sha256 + "_" + variant + "." + extension);
+    }
+
+    private Path uploadRoot() {
+        return Paths.get(uploadPath).toAbsolutePath().normalize();
+    }
+}
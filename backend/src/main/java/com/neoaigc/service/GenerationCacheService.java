@@ -0,0 +1,312 @@
+package com.neoaigc.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.neoaigc.config.GenerationCacheProperties;
+import com.neoaigc.entity.AiTask;
+import com.neoaigc.entity.GenerationCacheEntry;
+import com.neoaigc.mapper.GenerationCacheMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HexFormat;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 生成结果缓存
+ * 以(提供商, 任务类型, 规范化提示词, 输入图片SHA-256)的哈希为键缓存结果URL。
+ * 内存层(Caffeine)在前，generation_cache表在后，重启后缓存仍然有效。
+ * 提供商返回的远程地址带有会过期的签名，只按remote-ttl短期缓存；镜像到本地后的地址按类型的有效期缓存。
+ * 本地文件可能已被镜像目录淘汰，命中本地地址时确认文件仍然存在，不存在按未命中处理，之后的生成结果会覆盖该条目。
+ */
+@Service
+public class GenerationCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(GenerationCacheService.class);
+
+    private static final int PURGE_BATCH_SIZE = 1000;
+
+    @Autowired
+    private GenerationCacheMapper cacheMapper;
+
+    @Autowired
+    private GenerationCacheProperties properties;
+
+    @Autowired
+    private AiServiceRegistry aiServiceRegistry;
+
+    @Value("${file.upload-path}")
+    private String uploadPath;
+
+    /**
+     * 内存层条目，expiresAt为过期时间（毫秒）
+     */
+    private record CachedResult(String resultUrl, long expiresAt) {
+    }
+
+    private Cache<String, CachedResult> memory;
+
+    private ScheduledExecutorService purger;
+
+    @PostConstruct
+    public void init() {
+        memory = Caffeine.newBuilder()
+                .maximumSize(properties.getMemoryMaxSize())
+                .expireAfter(new Expiry<String, CachedResult>() {
+                    @Override
+                    public long expireAfterCreate(String key, CachedResult value, long currentTime) {
+                        long remaining = value.expiresAt() - System.currentTimeMillis();
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remaining));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, CachedResult value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, CachedResult value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+
+        if (properties.isEnabled()) {
+            long purgeMillis = properties.getPurgeInterval().toMillis();
+            purger = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "GenerationCachePurge");
+                thread.setDaemon(true);
+                return thread;
+            });
+            purger.scheduleWithFixedDelay(this::purgeExpired, purgeMillis, purgeMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (purger != null) {
+            purger.shutdownNow();
+        }
+    }
+
+    /**
+     * 计算任务的规范键，同时用于结果缓存和相同请求合并
+     * @return 输入图片无法读取时返回null
+     */
+    public String keyFor(AiTask task) {
+        String imageHash = "";
+        if (task.getImageUrl() != null) {
+            imageHash = hashImage(task.getImageUrl());
+            if (imageHash == null) {
+                return null;
+            }
+        }
+        String provider = aiServiceRegistry.get(task.getProvider()).getProvider();
+        String canonical = String.join("\n", "v1", provider, task.getType().name(),
+                normalizePrompt(task.getPrompt()), imageHash);
+        return sha256Hex(canonical.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 查询缓存的结果URL，未命中、缓存关闭或该类型不缓存时返回null
+     */
+    public String lookup(AiTask task, String key) {
+        if (key == null || !cacheable(task.getType())) {
+            return null;
+        }
+        CachedResult cached = memory.getIfPresent(key);
+        if (cached != null && cached.expiresAt() > System.currentTimeMillis()) {
+            if (available(cached.resultUrl())) {
+                return cached.resultUrl();
+            }
+            memory.invalidate(key);
+            return null;
+        }
+        try {
+            GenerationCacheEntry entry = cacheMapper.findValid(key);
+            if (entry == null || !available(entry.getResultUrl())) {
+                return null;
+            }
+            long expiresAt = toMillis(entry.getExpiresAt());
+            if (isRemote(entry.getResultUrl()) && entry.getCreatedAt() != null) {
+                // 之前按类型有效期写入的远程地址同样只在remote-ttl内有效
+                expiresAt = Math.min(expiresAt, toMillis(entry.getCreatedAt().plus(properties.getRemoteTtl())));
+                if (expiresAt <= System.currentTimeMillis()) {
+                    return null;
+                }
+            }
+            memory.put(key, new CachedResult(entry.getResultUrl(), expiresAt));
+            return entry.getResultUrl();
+        } catch (Exception e) {
+            // 缓存不可用时按未命中处理
+            logger.warn("查询生成结果缓存失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 写入生成结果
+     */
+    public void store(String key, AiTask task, String resultUrl) {
+        if (key == null || resultUrl == null || !cacheable(task.getType())) {
+            return;
+        }
+        Duration ttl = properties.resolveTtl(task.getType());
+        if (isRemote(resultUrl) && ttl.compareTo(properties.getRemoteTtl()) > 0) {
+            ttl = properties.getRemoteTtl();
+        }
+        if (ttl.compareTo(Duration.ZERO) <= 0) {
+            return;
+        }
+        LocalDateTime expiresAt = LocalDateTime.now().plus(ttl);
+        memory.put(key, new CachedResult(resultUrl, toMillis(expiresAt)));
+
+        GenerationCacheEntry entry = new GenerationCacheEntry();
+        entry.setCacheKey(key);
+        entry.setProvider(aiServiceRegistry.get(task.getProvider()).getProvider());
+        entry.setType(task.getType());
+        entry.setResultUrl(resultUrl);
+        entry.setExpiresAt(expiresAt);
+        try {
+            cacheMapper.upsert(entry);
+        } catch (Exception e) {
+            logger.warn("写入生成结果缓存失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 任务结果镜像到本地后，把缓存中的远程地址替换为本地地址并按类型的有效期重新写入
+     * 缓存中已是其他可用结果时不覆盖
+     */
+    public void replaceResultUrl(AiTask task, String remoteUrl, String localUrl) {
+        String key = keyFor(task);
+        String current = lookup(task, key);
+        if (current == null || current.equals(remoteUrl)) {
+            store(key, task, localUrl);
+        }
+    }
+
+    public CacheStats getCacheStats() {
+        return memory.stats();
+    }
+
+    public long getCacheSize() {
+        return memory.estimatedSize();
+    }
+
+    private boolean cacheable(AiTask.TaskType type) {
+        if (!properties.isEnabled()) {
+            return false;
+        }
+        Duration ttl = properties.resolveTtl(type);
+        return ttl != null && ttl.compareTo(Duration.ZERO) > 0;
+    }
+
+    private static boolean isRemote(String url) {
+        return url.startsWith("http://") || url.startsWith("https://");
+    }
+
+    /**
+     * 远程地址由有效期控制；本地地址需要文件仍然存在
+     */
+    private boolean available(String resultUrl) {
+        if (!resultUrl.startsWith("/uploads/")) {
+            return true;
+        }
+        Path root = Paths.get(uploadPath).toAbsolutePath().normalize();
+        Path file = root.resolve(resultUrl.substring("/uploads/".length())).normalize();
+        return file.startsWith(root) && Files.isRegularFile(file);
+    }
+
+    /**
+     * 去掉首尾空白、合并连续空白并做NFKC归一化，大小写保持不变
+     */
+    private static String normalizePrompt(String prompt) {
+        if (prompt == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(prompt, Normalizer.Form.NFKC);
+        return normalized.strip().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * 本地上传的图片取内容的SHA-256；外部URL按URL本身计算
+     */
+    private String hashImage(String imageUrl) {
+        if (!imageUrl.startsWith("/uploads/")) {
+            return sha256Hex(imageUrl.getBytes(StandardCharsets.UTF_8));
+        }
+        // 内容寻址的路径本身就包含内容哈希
+        String contentHash = UploadStorageService.sha256FromUrl(imageUrl);
+        if (contentHash != null) {
+            return contentHash;
+        }
+        Path root = Paths.get(uploadPath).toAbsolutePath().normalize();
+        Path file = root.resolve(imageUrl.substring("/uploads/".length())).normalize();
+        if (!file.startsWith(root)) {
+            return null;
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            logger.warn("读取输入图片失败，不使用缓存: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void purgeExpired() {
+        try {
+            int total = 0;
+            int deleted;
+            do {
+                deleted = cacheMapper.purgeExpired(PURGE_BATCH_SIZE);
+                total += deleted;
+            } while (deleted == PURGE_BATCH_SIZE);
+            if (total > 0) {
+                logger.info("清理过期生成结果缓存{}条", total);
+            }
+        } catch (Exception e) {
+            logger.warn("清理生成结果缓存失败: {}", e.getMessage());
+        }
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static String sha256Hex(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.neoaigc.service;
+
+import com.neoaigc.config.AiLimitProperties;
+import com.neoaigc.util.Bulkhead;
+import com.neoaigc.util.TokenBucketRateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 带限流保护的AI服务装饰器
+ * 每个操作有独立的并发隔离舱和令牌桶，超出配额的调用在有界队列中等待，而不是打到服务商后失败
+ * 按提供商和操作记录调用耗时（ai.provider.call，不含排队）、本地拒绝次数和占用的并发名额
+ */
+public class GuardedAiService implements AiService {
+
+    public static final String TEXT_TO_IMAGE = "text-to-image";
+    public static final String IMAGE_TO_IMAGE = "image-to-image";
+    public static final String REMOVE_BACKGROUND = "remove-background";
+    public static final String FACE_SWAP = "face-swap";
+
+    private final String provider;
+    private final AiService delegate;
+    private final Map<String, Guard> guards;
+
+    public GuardedAiService(String provider, AiService delegate, AiLimitProperties limits, MeterRegistry meterRegistry) {
+        this.provider = provider;
+        this.delegate = delegate;
+        this.guards = Map.of(
+                TEXT_TO_IMAGE, new Guard(provider, TEXT_TO_IMAGE, limits.resolve(provider, TEXT_TO_IMAGE), meterRegistry),
+                IMAGE_TO_IMAGE, new Guard(provider, IMAGE_TO_IMAGE, limits.resolve(provider, IMAGE_TO_IMAGE), meterRegistry),
+                REMOVE_BACKGROUND, new Guard(provider, REMOVE_BACKGROUND, limits.resolve(provider, REMOVE_BACKGROUND), meterRegistry),
+                FACE_SWAP, new Guard(provider, FACE_SWAP, limits.resolve(provider, FACE_SWAP), meterRegistry));
+    }
+
+    @Override
+    public String textToImage(String prompt) {
+        return call(TEXT_TO_IMAGE, () -> delegate.textToImage(prompt));
+    }
+
+    @Override
+    public String imageToImage(String imageUrl, String prompt) {
+        return call(IMAGE_TO_IMAGE, () -> delegate.imageToImage(imageUrl, prompt));
+    }
+
+    @Override
+    public String removeBackground(String imageUrl) {
+        return call(REMOVE_BACKGROUND, () -> delegate.removeBackground(imageUrl));
+    }
+
+    @Override
+    public String faceSwap(String imageUrl, String prompt) {
+        return call(FACE_SWAP, () -> delegate.faceSwap(imageUrl, prompt));
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public AiService getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * 各操作正在调用、排队等待的请求数和并发上限
+     */
+    public Map<String, Map<String, Integer>> getOperationStats() {
+        Map<String, Map<String, Integer>> stats = new LinkedHashMap<>();
+        for (String operation : new String[]{TEXT_TO_IMAGE, IMAGE_TO_IMAGE, REMOVE_BACKGROUND, FACE_SWAP}) {
+            Guard guard = guards.get(operation);
+            Map<String, Integer> operationStats = new LinkedHashMap<>();
+            operationStats.put("active", guard.getActive());
+            operationStats.put("waiting", guard.bulkhead.getWaiting());
+            operationStats.put("concurrency", guard.concurrency);
+            stats.put(operation, operationStats);
+        }
+        return stats;
+    }
+
+    private String call(String operation, Supplier<String> invocation) {
+        Guard guard = guards.get(operation);
+        long deadline = System.nanoTime() + guard.waitTimeoutNanos;
+        try {
+            // 先占并发名额再取令牌，保证真正发往服务商的请求速率不超过QPS
+            if (!guard.bulkhead.acquire(guard.waitTimeoutNanos)) {
+                guard.rejected.increment();
+                throw new ProviderThrottledException(provider + " " + operation + " concurrency limit reached");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProviderThrottledException(provider + " " + operation + " interrupted while waiting");
+        }
+
+        try {
+            if (!guard.rateLimiter.acquire(Math.max(0, deadline - System.nanoTime()))) {
+                guard.rejected.increment();
+                throw new ProviderThrottledException(provider + " " + operation + " rate limit reached");
+            }
+            long start = System.nanoTime();
+            try {
+                String result = invocation.get();
+                guard.success.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return result;
+            } catch (RuntimeException e) {
+                guard.failure.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                throw e;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProviderThrottledException(provider + " " + operation + " interrupted while waiting");
+        } finally {
+            guard.bulkhead.release();
+        }
+    }
+
+    private static class Guard {
+        final Bulkhead bulkhead;
+        final TokenBucketRateLimiter rateLimiter;
+        final long waitTimeoutNanos;
+        final int concurrency;
+        final Timer success;
+        final Timer failure;
+        final Counter rejected;
+
+        Guard(String provider, String operation, AiLimitProperties.Limit limit, MeterRegistry meterRegistry) {
+            this.bulkhead = new Bulkhead(limit.getConcurrency(), limit.getMaxWaiting());
+            this.rateLimiter = new TokenBucketRateLimiter(limit.getQps(), limit.getBurst());
+            this.waitTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(limit.getWaitTimeout());
+            this.concurrency = limit.getConcurrency();
+            this.success = callTimer(provider, operation, "success", meterRegistry);
+            this.failure = callTimer(provider, operation, "error", meterRegistry);
+            this.rejected = Counter.builder("ai.provider.rejected")
+                    .description("Calls rejected locally by the concurrency or rate limit")
+                    .tag("provider", provider)
+                    .tag("operation", operation)
+                    .register(meterRegistry);
+            Gauge.builder("ai.provider.active", this, Guard::getActive)
+                    .description("Calls currently running against the provider")
+                    .tag("provider", provider)
+                    .tag("operation", operation)
+                    .register(meterRegistry);
+            Gauge.builder("ai.provider.waiting", bulkhead, Bulkhead::getWaiting)
+                    .description("Calls waiting for a concurrency permit")
+                    .tag("provider", provider)
+                    .tag("operation", operation)
+                    .register(meterRegistry);
+        }
+
+        int getActive() {
+            return concurrency - bulkhead.getAvailable();
+        }
+
+        private static Timer callTimer(String provider, String operation, String outcome, MeterRegistry meterRegistry) {
+            return Timer.builder("ai.provider.call")
+                    .description("Provider call latency, excluding time spent waiting for local limits")
+                    .tag("provider", provider)
+                    .tag("operation", operation)
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(100))
+                    .maximumExpectedValue(Duration.ofMinutes(5))
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -1,10 +1,20 @@
 package com.neoaigc.service;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import com.neoaigc.util.HttpClientUtil;
 import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.util.*;
 
 /**
@@ -13,6 +23,8 @@ import java.util.*;
 @Service("tencentAiService")
 public class HunyuanAiService implements AiService {
 
+    private static final Logger logger = LoggerFactory.getLogger(HunyuanAiService.class);
+
     @Value("${hunyuan.api.secret-id}")
     private String secretId;
 
@@ -25,6 +37,15 @@ public class HunyuanAiService implements AiService {
     @Value("${hunyuan.api.image-gen-endpoint}")
     private String endpoint;
 
+    @Value("${hunyuan.api.timeout:30000}")
+    private long timeout;
+
+    @Value("${hunyuan.api.mock-enabled:true}")
+    private boolean mockEnabled;
+
+    @Autowired
+    private HttpClientUtil httpClient;
+
     /**
      * 文生图
      */
@@ -118,72 +139,84 @@ public class HunyuanAiService implements AiService {
      * 调用腾讯混元AI API
      */
     private String callHunyuanAPI(String action, Map<String, Object> body) throws Exception {
+        if (mockEnabled) {
+            return mockHunyuanAPI(action, body);
+        }
+
+        // 通过共享连接池发送TC3-HMAC-SHA256签名的请求
+        String payload = JSON.toJSONString(body);
+        return httpClient.post(endpoint, payload, signHeaders(action, payload), Duration.ofMillis(timeout));
+    }
+
+    /**
+     * 生成腾讯云API 3.0签名请求头
+     */
+    private Map<String, String> signHeaders(String action, String payload) throws Exception {
+        String service = "hunyuan";
+        String host = URI.create(endpoint).getHost();
+        String contentType = "application/json; charset=utf-8";
+        long timestamp = System.currentTimeMillis() / 1000;
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String date = dateFormat.format(new Date(timestamp * 1000));
+
+        String canonicalRequest = "POST\n/\n\n"
+                + "content-type:" + contentType + "\n"
+                + "host:" + host + "\n\n"
+                + "content-type;host\n"
+                + sha256Hex(payload);
+        String credentialScope = date + "/" + service + "/tc3_request";
+        String stringToSign = "TC3-HMAC-SHA256\n" + timestamp + "\n" + credentialScope + "\n" + sha256Hex(canonicalRequest);
+
+        byte[] secretDate = hmacSha256(("TC3" + secretKey).getBytes(StandardCharsets.UTF_8), date);
+        byte[] secretService = hmacSha256(secretDate, service);
+        byte[] secretSigning = hmacSha256(secretService, "tc3_request");
+        String signature = HexFormat.of().formatHex(hmacSha256(secretSigning, stringToSign));
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Authorization", "TC3-HMAC-SHA256 Credential=" + secretId + "/" + credentialScope
+                + ", SignedHeaders=content-type;host, Signature=" + signature);
+        headers.put("Content-Type", contentType);
+        headers.put("X-TC-Action", action);
+        headers.put("X-TC-Timestamp", String.valueOf(timestamp));
+        headers.put("X-TC-Version", "2023-09-01");
+        headers.put("X-TC-Region", region);
+        return headers;
+    }
+
+    private static String sha256Hex(String text) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static byte[] hmacSha256(byte[] key, String message) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        return mac.doFinal(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 模拟腾讯混元AI API（hunyuan.api.mock-enabled=true时使用）
+     */
+    private String mockHunyuanAPI(String action, Map<String, Object> body) {
         try {
-            // 注意：由于当前腾讯云SDK版本不支持混元AI服务的最新API，
-            // 这里暂时使用模拟数据代替实际API调用
-            // 实际项目中需要使用正确版本的SDK或直接使用HTTP请求调用API
-            
-            System.out.println("Calling Hunyuan AI API with action: " + action);
-            System.out.println("Request body: " + JSON.toJSONString(body));
+            logger.debug("模拟调用腾讯混元AI接口: {}, 请求体: {}", action, JSON.toJSONString(body));
             
             // 模拟API调用延迟
             Thread.sleep(2000);
             
-            // 模拟响应作为降级方案
-            JSONObject mockResponse = new JSONObject();
-            JSONObject resp = new JSONObject();
-            resp.put("ResultImage", "https://images.unsplash.com/photo-1578632767115-351597cf2477?w=800");
-            resp.put("RequestId", UUID.randomUUID().toString());
-            mockResponse.put("Response", resp);
-            
-            return mockResponse.toJSONString();
-            
-            /*
-            // 以下是使用腾讯云SDK的代码，当前版本不支持，暂时注释
-            // 使用腾讯云SDK调用混元AI API
-            com.tencentcloudapi.common.Credential cred = new com.tencentcloudapi.common.Credential(secretId, secretKey);
-            
-            // 创建HTTP客户端
-            com.tencentcloudapi.common.profile.ClientProfile clientProfile = new com.tencentcloudapi.common.profile.ClientProfile();
-            clientProfile.setSignMethod(com.tencentcloudapi.common.profile.HttpProfile.SIGN_TC3_256);
-            
-            // 配置HTTP配置
-            com.tencentcloudapi.common.profile.HttpProfile httpProfile = new com.tencentcloudapi.common.profile.HttpProfile();
-            httpProfile.setEndpoint(endpoint);
-            httpProfile.setRequestTimeout(30000); // 30秒超时
-            clientProfile.setHttpProfile(httpProfile);
-            
-            // 创建API客户端
-            com.tencentcloudapi.hunyuan.v20230901.Client client = new com.tencentcloudapi.hunyuan.v20230901.Client(cred, region, clientProfile);
-            
-            // 构建请求
-            String requestJson = JSON.toJSONString(body);
-            com.tencentcloudapi.common.CommonRequest req = new com.tencentcloudapi.common.CommonRequest();
-            req.setAction(action);
-            req.setVersion("2023-09-01");
-            req.setService("hunyuan");
-            req.setRegion(region);
-            req.setContentType("application/json");
-            req.setMethod("POST");
-            req.setRequestJson(requestJson);
-            
-            // 发送请求
-            com.tencentcloudapi.common.CommonResponse resp = client.callCommon(req);
-            
-            return resp.getBody();
-            */
-        } catch (Exception e) {
-            // 记录错误并返回模拟数据作为降级方案
-            System.err.println("Failed to call Hunyuan AI API: " + e.getMessage());
-            
-            // 模拟响应作为降级方案
-            JSONObject mockResponse = new JSONObject();
-            JSONObject resp = new JSONObject();
-            resp.put("ResultImage", "https://images.unsplash.com/photo-1578632767115-351597cf2477?w=800");
-            resp.put("RequestId", UUID.randomUUID().toString());
-            mockResponse.put("Response", resp);
-            
-            return mockResponse.toJSONString();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("模拟调用腾讯混元AI接口被中断: {}", e.getMessage());
         }
+
+        // 模拟响应
+        JSONObject mockResponse = new JSONObject();
+        JSONObject resp = new JSONObject();
+        resp.put("ResultImage", "https://images.unsplash.com/photo-1578632767115-351597cf2477?w=800");
+        resp.put("RequestId", UUID.randomUUID().toString());
+        mockResponse.put("Response", resp);
+        
+        return mockResponse.toJSONString();
     }
 }
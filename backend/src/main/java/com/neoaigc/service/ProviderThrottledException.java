@@ -0,0 +1,13 @@
+package com.neoaigc.service;
+
+/**
+ * AI服务调用被限流拒绝：本地并发或QPS配额已满且排队超时，或服务商返回限流响应
+ */
+public class ProviderThrottledException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ProviderThrottledException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,393 @@
+package com.neoaigc.service;
+
+import com.neoaigc.entity.AiTask;
+import com.neoaigc.entity.TaskStatusView;
+import com.neoaigc.util.HttpClientUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * 生成结果本地镜像
+ * 任务完成后在后台把提供商返回的远程结果下载到 mirror/ 目录，按内容哈希存放并通过/uploads访问，
+ * 下载完成后把任务的resultUrl改写为本地地址，生成结果缓存中的远程地址也一并替换为本地地址。
+ * 同一远程地址同时只下载一次，已镜像过的地址直接改写。
+ * 镜像目录总大小超过上限时按最近访问时间淘汰；被淘汰的文件再被访问时重定向到远程地址并重新下载。
+ */
+@Service
+public class ResultMirrorService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResultMirrorService.class);
+
+    public static final String MIRROR_DIR = "mirror";
+
+    // 远程地址与本地文件的对应关系，以点开头的目录不对外提供访问
+    private static final String INDEX_DIR = ".mirror-index";
+
+    // 超出上限时淘汰到上限的该比例，避免每次下载都触发淘汰
+    private static final double EVICT_TARGET_RATIO = 0.9;
+
+    @Autowired
+    private HttpClientUtil httpClient;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private UploadStorageService uploadStorageService;
+
+    @Autowired
+    private TaskQueueService taskQueueService;
+
+    @Autowired
+    private GenerationCacheService generationCacheService;
+
+    @Value("${file.upload-path}")
+    private String uploadPath;
+
+    @Value("${file.mirror.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.mirror.threads:4}")
+    private int threads;
+
+    @Value("${file.mirror.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${file.mirror.max-size:10GB}")
+    private DataSize maxSize;
+
+    @Value("${file.mirror.max-file-size:200MB}")
+    private DataSize maxFileSize;
+
+    @Value("${file.mirror.download-timeout:60s}")
+    private Duration downloadTimeout;
+
+    // 远程地址 -> 等待改写结果地址的任务
+    private final Map<String, List<TaskStatusView>> pending = new ConcurrentHashMap<>();
+
+    // 镜像文件 -> 大小，按访问顺序排列，最早访问的在前
+    private final LinkedHashMap<Path, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long totalBytes;
+
+    private Path root;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        root = Paths.get(uploadPath).toAbsolutePath().normalize();
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, "ResultMirror-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        new ExecutorServiceMetrics(executor, "resultMirror", Tags.empty()).bindTo(meterRegistry);
+        if (enabled) {
+            executor.execute(this::loadEntries);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 任务完成且结果为远程地址时提交镜像
+     */
+    @EventListener
+    public void onTaskStatus(TaskStatusEvent event) {
+        TaskStatusView status = event.status();
+        if (enabled && status.getStatus() == AiTask.TaskStatus.COMPLETED && isRemote(status.getResultUrl())) {
+            mirror(status.getResultUrl(), status);
+        }
+    }
+
+    /**
+     * 在当前线程镜像一个远程结果，用于不经过任务状态事件的结果（如批量任务的子项）
+     * @return 本地地址；未开启镜像、不是远程地址或下载失败时返回原地址
+     */
+    public String mirrorNow(String remoteUrl) {
+        if (!enabled || !isRemote(remoteUrl)) {
+            return remoteUrl;
+        }
+        String localUrl = localCopy(remoteUrl);
+        if (localUrl != null) {
+            return localUrl;
+        }
+        try {
+            return fetch(remoteUrl);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.warn("镜像生成结果失败 {}: {}", remoteUrl, e.getMessage());
+        }
+        return remoteUrl;
+    }
+
+    /**
+     * 查找远程地址已有的本地副本
+     * @return 尚未镜像或已被淘汰时返回null
+     */
+    public String localCopy(String remoteUrl) {
+        if (!enabled || !isRemote(remoteUrl)) {
+            return null;
+        }
+        String localUrl = readIndex(remoteIndex(remoteUrl));
+        return localUrl != null && Files.isRegularFile(resolve(localUrl)) ? localUrl : null;
+    }
+
+    /**
+     * 镜像文件被淘汰后，按内容哈希找回原始远程地址并在后台重新下载
+     * @return 没有记录时返回null
+     */
+    public String recover(String sha256) {
+        String remoteUrl = readIndex(sourceIndex(sha256));
+        if (remoteUrl != null && enabled) {
+            mirror(remoteUrl, null);
+        }
+        return remoteUrl;
+    }
+
+    /**
+     * 记录一次访问，更新淘汰顺序
+     */
+    public void touch(Path file) {
+        synchronized (entries) {
+            entries.get(file);
+        }
+    }
+
+    public static boolean isMirrorUrl(String url) {
+        return url.startsWith("/uploads/" + MIRROR_DIR + "/");
+    }
+
+    public int getFileCount() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getTotalBytes() {
+        synchronized (entries) {
+            return totalBytes;
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxSize.toBytes();
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 提交下载，同一远程地址只提交一次，等待中的任务在下载完成后一起改写
+     */
+    private void mirror(String remoteUrl, TaskStatusView status) {
+        boolean[] first = new boolean[1];
+        pending.compute(remoteUrl, (key, waiting) -> {
+            if (waiting == null) {
+                waiting = new ArrayList<>();
+                first[0] = true;
+            }
+            if (status != null) {
+                waiting.add(status);
+            }
+            return waiting;
+        });
+        if (!first[0]) {
+            return;
+        }
+        try {
+            executor.execute(() -> download(remoteUrl));
+        } catch (RejectedExecutionException e) {
+            pending.remove(remoteUrl);
+            logger.warn("结果镜像队列已满，跳过: {}", remoteUrl);
+        }
+    }
+
+    private void download(String remoteUrl) {
+        String localUrl = localCopy(remoteUrl);
+        try {
+            if (localUrl == null) {
+                localUrl = fetch(remoteUrl);
+            }
+        } catch (Exception e) {
+            logger.warn("镜像生成结果失败 {}: {}", remoteUrl, e.getMessage());
+        } finally {
+            List<TaskStatusView> waiting = pending.remove(remoteUrl);
+            if (localUrl != null && waiting != null) {
+                for (TaskStatusView status : waiting) {
+                    try {
+                        AiTask task = taskQueueService.replaceResultUrl(status, localUrl);
+                        if (task != null) {
+                            generationCacheService.replaceResultUrl(task, remoteUrl, localUrl);
+                        }
+                    } catch (Exception e) {
+                        logger.warn("改写任务{}结果地址失败: {}", status.getId(), e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    private String fetch(String remoteUrl) throws Exception {
+        UploadStorageService.StoredFile stored;
+        UploadStorageService.Ingest ingest = uploadStorageService.begin(MIRROR_DIR, maxFileSize.toBytes());
+        try {
+            HttpClientUtil.await(httpClient.stream(remoteUrl, ingest, downloadTimeout), downloadTimeout);
+            stored = ingest.commit(extension -> true, "Unsupported result format");
+        } finally {
+            ingest.abort();
+        }
+
+        writeIndex(sourceIndex(stored.sha256()), remoteUrl);
+        writeIndex(remoteIndex(remoteUrl), stored.url());
+        add(resolve(stored.url()), stored.size());
+        logger.info("生成结果已镜像: {} -> {}", remoteUrl, stored.url());
+        return stored.url();
+    }
+
+    /**
+     * 启动时按修改时间恢复淘汰顺序
+     */
+    private void loadEntries() {
+        Path mirrorDir = root.resolve(MIRROR_DIR);
+        if (!Files.isDirectory(mirrorDir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(mirrorDir)) {
+            List<Map.Entry<Path, BasicFileAttributes>> found = new ArrayList<>();
+            for (Path file : (Iterable<Path>) files::iterator) {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (attributes.isRegularFile()) {
+                    found.add(Map.entry(file, attributes));
+                }
+            }
+            found.sort(Comparator.comparing(entry -> entry.getValue().lastModifiedTime()));
+            for (Map.Entry<Path, BasicFileAttributes> entry : found) {
+                add(entry.getKey(), entry.getValue().size());
+            }
+            logger.info("已加载{}个镜像文件，共{}MB", found.size(), getTotalBytes() / (1024 * 1024));
+        } catch (IOException e) {
+            logger.warn("加载镜像目录失败: {}", e.getMessage());
+        }
+    }
+
+    private void add(Path file, long size) {
+        List<Path> evicted = new ArrayList<>();
+        synchronized (entries) {
+            Long previous = entries.put(file, size);
+            totalBytes += size - (previous == null ? 0 : previous);
+            if (totalBytes > maxSize.toBytes()) {
+                long target = (long) (maxSize.toBytes() * EVICT_TARGET_RATIO);
+                Iterator<Map.Entry<Path, Long>> iterator = entries.entrySet().iterator();
+                while (totalBytes > target && iterator.hasNext()) {
+                    Map.Entry<Path, Long> eldest = iterator.next();
+                    if (eldest.getKey().equals(file)) {
+                        continue;
+                    }
+                    totalBytes -= eldest.getValue();
+                    evicted.add(eldest.getKey());
+                    iterator.remove();
+                }
+            }
+        }
+        // 只删除文件，索引保留以便之后重定向到远程地址
+        for (Path path : evicted) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                logger.warn("删除镜像文件失败 {}: {}", path, e.getMessage());
+            }
+        }
+        if (!evicted.isEmpty()) {
+            logger.info("淘汰{}个镜像文件", evicted.size());
+        }
+    }
+
+    private Path resolve(String localUrl) {
+        return root.resolve(localUrl.substring("/uploads/".length())).normalize();
+    }
+
+    private Path remoteIndex(String remoteUrl) {
+        String hash = sha256(remoteUrl);
+        return root.resolve(INDEX_DIR).resolve("remote").resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private Path sourceIndex(String sha256) {
+        return root.resolve(INDEX_DIR).resolve("source").resolve(sha256.substring(0, 2)).resolve(sha256);
+    }
+
+    private static String readIndex(Path path) {
+        try {
+            return Files.isRegularFile(path) ? Files.readString(path, StandardCharsets.UTF_8) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeIndex(Path path, String value) throws IOException {
+        Files.createDirectories(path.getParent());
+        Path temp = Files.createTempFile(path.getParent(), "index-", ".tmp");
+        try {
+            Files.writeString(temp, value, StandardCharsets.UTF_8);
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static boolean isRemote(String url) {
+        return url != null && (url.startsWith("http://") || url.startsWith("https://"));
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
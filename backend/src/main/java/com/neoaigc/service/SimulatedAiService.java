@@ -0,0 +1,114 @@
+package com.neoaigc.service;
+
+import com.neoaigc.config.SimulatedAiProperties;
+import com.neoaigc.util.TokenBucketRateLimiter;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 模拟AI服务，用于压测
+ * 只在 ai.provider=simulated 时创建，注册为提供商simulated；不访问外部服务，按配置的耗时分布阻塞后返回本地结果地址，
+ * 按配置的比例返回错误或限流响应。限流响应抛出ProviderThrottledException，与本地配额已满一样放回队列稍后重试。
+ */
+@Service("simulatedAiService")
+@ConditionalOnProperty(name = "ai.provider", havingValue = "simulated")
+public class SimulatedAiService implements AiService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimulatedAiService.class);
+
+    // 标准正态分布的99分位数
+    private static final double Z_99 = 2.3263;
+
+    @Autowired
+    private SimulatedAiProperties properties;
+
+    // 操作 -> 服务商侧限流
+    private final Map<String, TokenBucketRateLimiter> rateLimiters = new HashMap<>();
+
+    @PostConstruct
+    public void init() {
+        if (properties.getQps() > 0) {
+            for (String operation : new String[]{GuardedAiService.TEXT_TO_IMAGE, GuardedAiService.IMAGE_TO_IMAGE,
+                    GuardedAiService.REMOVE_BACKGROUND, GuardedAiService.FACE_SWAP}) {
+                rateLimiters.put(operation, new TokenBucketRateLimiter(properties.getQps(), 1));
+            }
+        }
+        SimulatedAiProperties.Latency latency = properties.getLatency();
+        logger.info("使用模拟AI服务: p50={}, p99={}, 长尾比例={}, 错误率={}, 限流比例={}, QPS上限={}",
+                latency.getP50(), latency.getP99(), properties.getTailRate(), properties.getErrorRate(),
+                properties.getThrottleRate(), properties.getQps());
+    }
+
+    @Override
+    public String textToImage(String prompt) {
+        return call(GuardedAiService.TEXT_TO_IMAGE);
+    }
+
+    @Override
+    public String imageToImage(String imageUrl, String prompt) {
+        return call(GuardedAiService.IMAGE_TO_IMAGE);
+    }
+
+    @Override
+    public String removeBackground(String imageUrl) {
+        return call(GuardedAiService.REMOVE_BACKGROUND);
+    }
+
+    @Override
+    public String faceSwap(String imageUrl, String prompt) {
+        return call(GuardedAiService.FACE_SWAP);
+    }
+
+    private String call(String operation) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        TokenBucketRateLimiter rateLimiter = rateLimiters.get(operation);
+        if (rateLimiter != null && rateLimiter.reserve(0) < 0) {
+            throw new ProviderThrottledException("simulated " + operation + " throttled by provider: qps limit");
+        }
+        if (random.nextDouble() < properties.getThrottleRate()) {
+            throw new ProviderThrottledException("simulated " + operation + " throttled by provider");
+        }
+
+        try {
+            Thread.sleep(sampleLatency(operation, random).toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Simulated " + operation + " interrupted");
+        }
+
+        if (random.nextDouble() < properties.getErrorRate()) {
+            throw new RuntimeException("Simulated " + operation + " failed");
+        }
+        return "/uploads/simulated/" + operation + "/" + UUID.randomUUID() + ".png";
+    }
+
+    /**
+     * 对数正态分布的中位数为p50，按 p99 = p50 * e^(2.3263σ) 求σ；长尾部分从p99开始服从帕累托分布
+     */
+    private Duration sampleLatency(String operation, ThreadLocalRandom random) {
+        SimulatedAiProperties.Latency latency = properties.resolve(operation);
+        double p50 = Math.max(latency.getP50().toMillis(), 1);
+        double p99 = latency.getP99().toMillis();
+
+        double millis;
+        if (properties.getTailRate() > 0 && random.nextDouble() < properties.getTailRate()) {
+            millis = Math.max(p99, p50) / Math.pow(1 - random.nextDouble(), 1 / properties.getTailAlpha());
+        } else if (p99 > p50) {
+            double sigma = Math.log(p99 / p50) / Z_99;
+            millis = p50 * Math.exp(sigma * random.nextGaussian());
+        } else {
+            millis = p50;
+        }
+        return Duration.ofMillis((long) Math.min(millis, properties.getMaxLatency().toMillis()));
+    }
+}
@@ -0,0 +1,220 @@
+package com.neoaigc.service;
+
+import com.neoaigc.entity.AiTask;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 任务调度器
+ * 单独的调度线程从任务队列中批量领取任务并交给taskExecutor执行，同时定期为处理中的任务续租。
+ * 节点崩溃后未续期的租约会过期，任务由其他节点重新领取。
+ */
+@Service
+public class TaskDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskDispatcher.class);
+
+    @Autowired
+    private TaskQueueService taskQueueService;
+
+    @Autowired
+    private TaskProcessor taskProcessor;
+
+    @Autowired
+    @Qualifier("taskExecutor")
+    private Executor taskExecutor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${task.queue.enabled:true}")
+    private boolean enabled;
+
+    @Value("${task.queue.worker-id:}")
+    private String configuredWorkerId;
+
+    @Value("${task.queue.batch-size:10}")
+    private int batchSize;
+
+    @Value("${task.queue.max-in-flight:20}")
+    private int maxInFlight;
+
+    @Value("${task.queue.poll-interval:1000}")
+    private long pollIntervalMillis;
+
+    // 当前节点正在处理的任务
+    private final Map<Long, AiTask> inFlight = new ConcurrentHashMap<>();
+
+    // 新任务入队或有任务完成时唤醒调度线程
+    private final Semaphore wakeups = new Semaphore(0);
+
+    private volatile boolean running;
+    private Thread dispatcherThread;
+    private String workerId;
+    private long lastRenewAt;
+
+    /**
+     * 处理中任务数与上限之比即为调度器的饱和度；虚拟线程模式下没有线程池指标，以此为准
+     */
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("task.dispatcher.in-flight", inFlight, Map::size)
+                .description("Tasks currently being processed on this node")
+                .register(meterRegistry);
+        Gauge.builder("task.dispatcher.capacity", () -> maxInFlight)
+                .description("Maximum tasks processed concurrently on this node")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            logger.info("任务调度器已禁用，当前节点不消费任务队列");
+            return;
+        }
+        workerId = configuredWorkerId.isEmpty()
+                ? ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8)
+                : configuredWorkerId;
+        running = true;
+        dispatcherThread = new Thread(this::runLoop, "TaskDispatcher");
+        dispatcherThread.setDaemon(true);
+        dispatcherThread.start();
+        logger.info("任务调度器已启动，节点标识: {}", workerId);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (dispatcherThread != null) {
+            dispatcherThread.interrupt();
+            dispatcherThread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    /**
+     * 通知调度线程立即领取任务，避免等待下一个轮询周期
+     */
+    public void wakeUp() {
+        wakeups.release();
+    }
+
+    public String getWorkerId() {
+        return workerId;
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * 当前节点处理中的任务，按提供商和任务类型计数
+     */
+    public Map<String, Map<AiTask.TaskType, Integer>> getInFlightByProvider() {
+        Map<String, Map<AiTask.TaskType, Integer>> counts = new TreeMap<>();
+        for (AiTask task : inFlight.values()) {
+            String provider = task.getProvider() != null ? task.getProvider() : "default";
+            counts.computeIfAbsent(provider, key -> new TreeMap<>()).merge(task.getType(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                renewLeasesIfDue();
+
+                int requested = Math.min(maxInFlight - inFlight.size(), batchSize);
+                int claimed = 0;
+                if (requested > 0) {
+                    List<AiTask> tasks = taskQueueService.claim(workerId, requested);
+                    claimed = tasks.size();
+                    for (AiTask task : tasks) {
+                        submit(task);
+                    }
+                }
+
+                // 领满一批说明队列里可能还有任务，直接进入下一轮
+                if (claimed > 0 && claimed == requested) {
+                    continue;
+                }
+                awaitWakeUp();
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("领取任务失败: {}", e.getMessage(), e);
+                try {
+                    awaitWakeUp();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void submit(AiTask task) {
+        inFlight.put(task.getId(), task);
+        try {
+            taskExecutor.execute(() -> {
+                try {
+                    taskProcessor.process(task);
+                } finally {
+                    inFlight.remove(task.getId());
+                    wakeUp();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 租约到期后任务会被重新领取
+            inFlight.remove(task.getId());
+            logger.warn("任务{}提交到线程池失败: {}", task.getId(), e.getMessage());
+        }
+    }
+
+    private void awaitWakeUp() throws InterruptedException {
+        wakeups.tryAcquire(pollIntervalMillis, TimeUnit.MILLISECONDS);
+        wakeups.drainPermits();
+    }
+
+    /**
+     * 每三分之一租约时长续期一次，保证长耗时任务不会被其他节点抢走
+     */
+    private void renewLeasesIfDue() {
+        long now = System.currentTimeMillis();
+        long renewInterval = TimeUnit.SECONDS.toMillis(taskQueueService.getLeaseSeconds()) / 3;
+        if (now - lastRenewAt < renewInterval) {
+            return;
+        }
+        lastRenewAt = now;
+        if (!inFlight.isEmpty()) {
+            taskQueueService.renew(workerId, Set.copyOf(inFlight.keySet()));
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.neoaigc.service;
+
+import com.neoaigc.entity.AiTask;
+import com.neoaigc.entity.TaskQueueDepth;
+import com.neoaigc.mapper.AiTaskMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 任务生命周期指标
+ * 队列深度由后台线程定期查询数据库得到，多节点部署时各节点报告的是同一个全局值；
+ * 排队时间、总耗时和结束计数由领取和结束任务的节点记录。
+ */
+@Service
+public class TaskMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskMetrics.class);
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private AiTaskMapper taskMapper;
+
+    @Autowired
+    private AiServiceRegistry aiServiceRegistry;
+
+    @Value("${task.metrics.queue-depth-interval:15s}")
+    private Duration queueDepthInterval;
+
+    // 状态 -> 类型 -> 任务数
+    private final Map<AiTask.TaskStatus, Map<AiTask.TaskType, AtomicLong>> depths = new EnumMap<>(AiTask.TaskStatus.class);
+
+    // 最早一个等待中任务进入队列的时间（毫秒），没有等待中的任务时为0
+    private final AtomicLong oldestPendingAt = new AtomicLong();
+
+    // 按类型和提供商缓存的指标，避免每次记录都按标签查找
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService refresher;
+
+    @PostConstruct
+    public void init() {
+        for (AiTask.TaskStatus status : List.of(AiTask.TaskStatus.PENDING, AiTask.TaskStatus.PROCESSING)) {
+            Map<AiTask.TaskType, AtomicLong> byType = new EnumMap<>(AiTask.TaskType.class);
+            for (AiTask.TaskType type : AiTask.TaskType.values()) {
+                AtomicLong value = new AtomicLong();
+                Gauge.builder("task.queue.depth", value, AtomicLong::get)
+                        .description("Open tasks by status and type")
+                        .tag("status", status.name())
+                        .tag("type", type.name())
+                        .register(meterRegistry);
+                byType.put(type, value);
+            }
+            depths.put(status, byType);
+        }
+        Gauge.builder("task.queue.oldest.age", oldestPendingAt,
+                        oldest -> oldest.get() == 0 ? 0 : Math.max(0, System.currentTimeMillis() - oldest.get()) / 1000.0)
+                .description("Seconds the oldest pending task has been waiting")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "TaskMetrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                refreshQueueDepth();
+            } catch (Exception e) {
+                logger.warn("统计队列深度失败: {}", e.getMessage());
+            }
+        }, 0, queueDepthInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * 任务被领取时记录排队时间：从创建或上次放回队列到被领取
+     */
+    public void recordClaimed(AiTask task) {
+        if (task.getUpdatedAt() != null) {
+            timer("task.queue.wait", "Time tasks spend pending before being claimed", task)
+                    .record(since(task.getUpdatedAt()));
+        }
+    }
+
+    /**
+     * 任务结束时记录结果计数和从创建到结束的总耗时
+     */
+    public void recordFinished(AiTask task) {
+        String status = task.getStatus().name();
+        counter("task.finished", "Finished tasks by outcome", task, status).increment();
+        if (task.getCreatedAt() != null) {
+            timer("task.duration", "Time from task creation to completion or failure", task, status)
+                    .record(since(task.getCreatedAt()));
+        }
+    }
+
+    /**
+     * 任务因限流等原因放回队列
+     */
+    public void recordRequeued(AiTask task) {
+        counter("task.requeued", "Tasks released back to the queue for a later retry", task, null).increment();
+    }
+
+    private void refreshQueueDepth() {
+        Map<AiTask.TaskStatus, Map<AiTask.TaskType, Long>> counts = new EnumMap<>(AiTask.TaskStatus.class);
+        LocalDateTime oldest = null;
+        for (TaskQueueDepth depth : taskMapper.countOpenTasks()) {
+            if (depth.getStatus() == null || depth.getType() == null) {
+                continue;
+            }
+            counts.computeIfAbsent(depth.getStatus(), status -> new EnumMap<>(AiTask.TaskType.class))
+                    .put(depth.getType(), depth.getCount());
+            if (depth.getStatus() == AiTask.TaskStatus.PENDING && depth.getOldestUpdatedAt() != null
+                    && (oldest == null || depth.getOldestUpdatedAt().isBefore(oldest))) {
+                oldest = depth.getOldestUpdatedAt();
+            }
+        }
+        depths.forEach((status, byType) -> byType.forEach((type, value) ->
+                value.set(counts.getOrDefault(status, Map.of()).getOrDefault(type, 0L))));
+        oldestPendingAt.set(oldest == null ? 0 : System.currentTimeMillis() - since(oldest).toMillis());
+    }
+
+    private Timer timer(String name, String description, AiTask task) {
+        return timer(name, description, task, null);
+    }
+
+    private Timer timer(String name, String description, AiTask task, String status) {
+        String type = task.getType().name();
+        String provider = provider(task);
+        String key = name + '|' + type + '|' + provider + '|' + status;
+        return timers.computeIfAbsent(key, k -> {
+            Timer.Builder builder = Timer.builder(name)
+                    .description(description)
+                    .tag("type", type)
+                    .tag("provider", provider)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(100))
+                    .maximumExpectedValue(Duration.ofHours(1));
+            if (status != null) {
+                builder.tag("status", status);
+            }
+            return builder.register(meterRegistry);
+        });
+    }
+
+    private Counter counter(String name, String description, AiTask task, String status) {
+        String type = task.getType().name();
+        String provider = provider(task);
+        String key = name + '|' + type + '|' + provider + '|' + status;
+        return counters.computeIfAbsent(key, k -> {
+            Counter.Builder builder = Counter.builder(name)
+                    .description(description)
+                    .tag("type", type)
+                    .tag("provider", provider);
+            if (status != null) {
+                builder.tag("status", status);
+            }
+            return builder.register(meterRegistry);
+        });
+    }
+
+    /**
+     * 提供商取实际处理任务的服务，未知的提供商名归入默认服务，避免标签值无限增长
+     */
+    private String provider(AiTask task) {
+        return aiServiceRegistry.get(task.getProvider()).getProvider();
+    }
+
+    /**
+     * 任务时间由数据库NOW()写入，与应用使用同一时区
+     */
+    private static Duration since(LocalDateTime time) {
+        Duration elapsed = Duration.between(time, LocalDateTime.now());
+        return elapsed.isNegative() ? Duration.ZERO : elapsed;
+    }
+}
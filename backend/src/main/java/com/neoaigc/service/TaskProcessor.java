@@ -0,0 +1,169 @@
+package com.neoaigc.service;
+
+import com.neoaigc.entity.AiTask;
+import com.neoaigc.util.SingleFlight;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 任务处理器，负责调用AI服务并写回任务结果
+ */
+@Service
+public class TaskProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskProcessor.class);
+
+    @Autowired
+    private TaskQueueService taskQueueService;
+
+    @Autowired
+    private AiServiceRegistry aiServiceRegistry;
+
+    @Autowired
+    private GenerationCacheService generationCacheService;
+
+    @Autowired
+    private BatchMattingService batchMattingService;
+
+    @Value("${task.queue.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${task.queue.throttle-retry-delay:10}")
+    private int throttleRetryDelaySeconds;
+
+    @Value("${task.queue.coalesce-wait-timeout:120s}")
+    private Duration coalesceWaitTimeout;
+
+    private final SingleFlight<String, String> inFlightGenerations = new SingleFlight<>();
+
+    /**
+     * 处理一个已领取的任务
+     */
+    public void process(AiTask task) {
+        if (task.getAttempts() != null && task.getAttempts() > maxAttempts) {
+            logger.warn("任务{}已被领取{}次，放弃处理", task.getId(), task.getAttempts());
+            taskQueueService.fail(task, "Task exceeded max attempts: " + maxAttempts);
+            return;
+        }
+
+        // 多张图片的批量任务由BatchMattingService并行处理
+        if (task.isBatch()) {
+            try {
+                batchMattingService.process(task);
+            } catch (Exception e) {
+                logger.error("批量任务{}处理失败: {}", task.getId(), e.getMessage());
+                taskQueueService.fail(task, e.getMessage());
+            }
+            return;
+        }
+
+        try {
+            boolean forceFresh = Boolean.TRUE.equals(task.getForceFresh());
+
+            // 排队期间相同输入的任务可能已经完成
+            String key = generationCacheService.keyFor(task);
+            String cachedResultUrl = forceFresh ? null : generationCacheService.lookup(task, key);
+            if (cachedResultUrl != null) {
+                if (!taskQueueService.complete(task, cachedResultUrl)) {
+                    logger.warn("任务{}的租约已失效，结果被丢弃", task.getId());
+                }
+                return;
+            }
+
+            // 相同输入的并发任务合并为一次AI服务调用，强制重新生成的任务单独调用
+            String resultUrl;
+            if (key != null && !forceFresh) {
+                resultUrl = inFlightGenerations.execute(key, coalesceWaitTimeout.toNanos(),
+                        () -> generateAndStore(task, key));
+            } else {
+                resultUrl = generateAndStore(task, key);
+            }
+
+            if (!taskQueueService.complete(task, resultUrl)) {
+                logger.warn("任务{}的租约已失效，结果被丢弃", task.getId());
+            }
+
+        } catch (TimeoutException e) {
+            // 等待相同输入的任务超时，放回队列，届时通常可以直接命中缓存
+            logger.info("任务{}等待相同请求超时，{}秒后重试", task.getId(), throttleRetryDelaySeconds);
+            taskQueueService.release(task, throttleRetryDelaySeconds);
+
+        } catch (ProviderThrottledException e) {
+            // 本地配额已满，放回队列稍后重试，不计入领取次数
+            logger.info("任务{}被限流，{}秒后重试: {}", task.getId(), throttleRetryDelaySeconds, e.getMessage());
+            taskQueueService.release(task, throttleRetryDelaySeconds);
+
+        } catch (InterruptedException e) {
+            // 停机时等待相同请求被中断，不是任务本身的问题
+            Thread.currentThread().interrupt();
+            requeue(task);
+
+        } catch (Exception e) {
+            if (Thread.currentThread().isInterrupted()) {
+                requeue(task);
+                return;
+            }
+            logger.error("任务{}处理失败: {}", task.getId(), e.getMessage());
+            if (!taskQueueService.fail(task, e.getMessage())) {
+                logger.warn("任务{}的租约已失效，失败状态被丢弃", task.getId());
+            }
+        }
+    }
+
+    /**
+     * 停机中断时放回队列，由其他节点或重启后重新处理
+     */
+    private void requeue(AiTask task) {
+        logger.info("任务{}被中断，放回队列", task.getId());
+        try {
+            taskQueueService.release(task, 0);
+        } catch (Exception e) {
+            // 停机过程中推送状态可能失败，未放回时租约过期后同样会被重新领取
+            logger.warn("任务{}放回队列时出错: {}", task.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 正在调用AI服务的不同输入数，相同输入的任务只计一次
+     */
+    public int getGeneratingCount() {
+        return inFlightGenerations.getInFlightCount();
+    }
+
+    /**
+     * 累计合并到进行中调用的任务数
+     */
+    public long getCoalescedCount() {
+        return inFlightGenerations.getCoalescedCount();
+    }
+
+    /**
+     * 调用AI服务并写入缓存，合并的调用只由执行者写入一次
+     * 结果此时为提供商的远程地址，按remote-ttl短期缓存；任务完成后ResultMirrorService在后台镜像到本地，
+     * 改写任务结果地址时再以本地地址按类型的有效期重新写入缓存
+     */
+    private String generateAndStore(AiTask task, String key) {
+        String resultUrl = generate(task);
+        generationCacheService.store(key, task, resultUrl);
+        return resultUrl;
+    }
+
+    /**
+     * 调用AI服务
+     */
+    private String generate(AiTask task) {
+        AiService selectedAiService = aiServiceRegistry.get(task.getProvider());
+        return switch (task.getType()) {
+            case TEXT_TO_IMAGE -> selectedAiService.textToImage(task.getPrompt());
+            case IMAGE_TO_IMAGE -> selectedAiService.imageToImage(task.getImageUrl(), task.getPrompt());
+            case BATCH_MATTING -> selectedAiService.removeBackground(task.getImageUrl());
+            case FACE_SWAP -> selectedAiService.faceSwap(task.getImageUrl(), task.getPrompt());
+        };
+    }
+}
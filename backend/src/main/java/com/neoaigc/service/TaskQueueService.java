@@ -0,0 +1,199 @@
+package com.neoaigc.service;
+
+import com.neoaigc.entity.AiTask;
+import com.neoaigc.entity.TaskStatusView;
+import com.neoaigc.mapper.AiTaskMapper;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 基于ai_tasks表的持久化任务队列
+ * 通过 SELECT ... FOR UPDATE SKIP LOCKED 领取任务，多个后端节点可以并发消费同一队列而不会重复处理。
+ * 每次状态写入成功后发布TaskStatusEvent，供推送通道使用。
+ * 结束状态和进度经TaskStatusWriter延迟批量写入：进度事件在写入缓冲时即发布，结束事件在写入数据库后才发布，
+ * 租约已被接管而未生效的结束状态不会推送。
+ * 领取在事务中进行，PROCESSING事件在事务提交后才发布，回滚时不会推送未生效的状态。
+ */
+@Service
+public class TaskQueueService {
+
+    @Autowired
+    private AiTaskMapper taskMapper;
+
+    @Autowired
+    private TaskStatusWriter statusWriter;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+
+    @Autowired
+    private TaskMetrics taskMetrics;
+
+    @Value("${task.queue.lease-seconds:120}")
+    private int leaseSeconds;
+
+    /**
+     * 在一个事务中写入一批新任务，生成的ID按顺序回填到各任务
+     * 用JDBC批量执行insert语句，连接开启rewriteBatchedStatements时驱动会把整批改写为一条多行INSERT
+     */
+    @Transactional
+    public void submitAll(List<AiTask> tasks) {
+        try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+            AiTaskMapper batchMapper = session.getMapper(AiTaskMapper.class);
+            for (AiTask task : tasks) {
+                batchMapper.insert(task);
+            }
+            session.flushStatements();
+            session.commit();
+        }
+    }
+
+    /**
+     * 领取一批任务并写入租约
+     */
+    @Transactional
+    public List<AiTask> claim(String workerId, int limit) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        List<AiTask> tasks = taskMapper.lockClaimable(limit);
+        if (tasks.isEmpty()) {
+            return tasks;
+        }
+
+        List<Long> ids = new ArrayList<>(tasks.size());
+        for (AiTask task : tasks) {
+            ids.add(task.getId());
+        }
+        taskMapper.markClaimed(ids, workerId, leaseSeconds);
+
+        List<TaskStatusEvent> events = new ArrayList<>(tasks.size());
+        for (AiTask task : tasks) {
+            // 租约过期被重新领取的任务不计排队时间
+            if (task.getStatus() == AiTask.TaskStatus.PENDING) {
+                taskMetrics.recordClaimed(task);
+            }
+            task.setStatus(AiTask.TaskStatus.PROCESSING);
+            task.setLeaseOwner(workerId);
+            task.setAttempts(task.getAttempts() == null ? 1 : task.getAttempts() + 1);
+            task.setUpdatedAt(LocalDateTime.now());
+            events.add(new TaskStatusEvent(TaskStatusView.of(task)));
+        }
+        publishAfterCommit(events);
+        return tasks;
+    }
+
+    /**
+     * 续期当前节点正在处理的任务
+     */
+    public int renew(String workerId, Collection<Long> taskIds) {
+        if (taskIds.isEmpty()) {
+            return 0;
+        }
+        return taskMapper.renewLeases(new ArrayList<>(taskIds), workerId, leaseSeconds);
+    }
+
+    /**
+     * 标记任务完成
+     * @return 已知租约被其他节点接管时返回false，此时结果被丢弃
+     */
+    public boolean complete(AiTask task, String resultUrl) {
+        task.setResultUrl(resultUrl);
+        task.setStatus(AiTask.TaskStatus.COMPLETED);
+        return statusWriter.finish(task, this::finished);
+    }
+
+    /**
+     * 标记任务失败
+     * @return 已知租约被其他节点接管时返回false
+     */
+    public boolean fail(AiTask task, String errorMessage) {
+        task.setErrorMessage(errorMessage);
+        task.setStatus(AiTask.TaskStatus.FAILED);
+        return statusWriter.finish(task, this::finished);
+    }
+
+    /**
+     * 写入批量任务的进度并推送
+     * @return 已知租约被其他节点接管时返回false，此时应停止处理
+     */
+    public boolean progress(AiTask task) {
+        return statusWriter.progress(task) && publish(task);
+    }
+
+    /**
+     * 放回队列，延迟delaySeconds秒后才能被再次领取，本次领取不计入次数
+     */
+    public boolean release(AiTask task, int delaySeconds) {
+        task.setStatus(AiTask.TaskStatus.PENDING);
+        if (taskMapper.release(task.getId(), task.getLeaseOwner(), delaySeconds) == 0) {
+            return false;
+        }
+        taskMetrics.recordRequeued(task);
+        return publish(task);
+    }
+
+    /**
+     * 把已完成任务的结果地址替换为本地副本
+     * @return 替换后的任务；任务结果已被其他更新改写时返回null
+     */
+    public AiTask replaceResultUrl(TaskStatusView status, String resultUrl) throws InterruptedException {
+        if (!statusWriter.replaceResultUrl(status.getId(), status.getResultUrl(), resultUrl)) {
+            return null;
+        }
+        AiTask task = taskMapper.findById(status.getId());
+        if (task != null) {
+            publish(task);
+        }
+        return task;
+    }
+
+    /**
+     * 结束状态写入数据库后记录指标并发布事件
+     */
+    private void finished(AiTask task) {
+        taskMetrics.recordFinished(task);
+        publish(task);
+    }
+
+    private void publishAfterCommit(List<TaskStatusEvent> events) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            events.forEach(eventPublisher::publishEvent);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                events.forEach(eventPublisher::publishEvent);
+            }
+        });
+    }
+
+    private boolean publish(AiTask task) {
+        task.setUpdatedAt(LocalDateTime.now());
+        eventPublisher.publishEvent(new TaskStatusEvent(TaskStatusView.of(task)));
+        return true;
+    }
+
+    public int getLeaseSeconds() {
+        return leaseSeconds;
+    }
+}
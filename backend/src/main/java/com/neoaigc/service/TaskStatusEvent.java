@@ -0,0 +1,9 @@
+package com.neoaigc.service;
+
+import com.neoaigc.entity.TaskStatusView;
+
+/**
+ * 任务状态变更事件，由任务队列在状态写入后发布
+ */
+public record TaskStatusEvent(TaskStatusView status) {
+}
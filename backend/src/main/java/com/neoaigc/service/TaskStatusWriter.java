@@ -0,0 +1,442 @@
+package com.neoaigc.service;
+
+import com.neoaigc.entity.AiTask;
+import com.neoaigc.entity.TaskStatusView;
+import com.neoaigc.entity.TaskSummary;
+import com.neoaigc.mapper.AiTaskMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.dao.NonTransientDataAccessResourceException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 任务状态延迟批量写入
+ * 任务结束状态和批量任务进度先写入内存缓冲，同一任务只保留最新的一次；后台线程按间隔或缓冲达到上限时
+ * 用一次JDBC批量执行写入数据库。写入成功前，读取任务的接口通过apply叠加缓冲中的状态，客户端不会看到状态回退。
+ * 领取任务（写入PROCESSING和租约）仍然同步执行，因为它与SELECT ... FOR UPDATE在同一事务中。
+ * 节点崩溃时未写入的状态丢失，任务在租约过期后被重新领取处理。
+ * 批量写入失败时逐条重试，数据本身无法写入的条目（如结果地址超长）改写为失败或丢弃，不阻塞其他任务的写入。
+ * 结束状态在事务提交且确实更新了任务行后才回调调用方（发布事件），租约已被接管而被丢弃的结束状态不会推送给客户端。
+ */
+@Service
+public class TaskStatusWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskStatusWriter.class);
+
+    @Autowired
+    private AiTaskMapper taskMapper;
+
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${task.status-writer.enabled:true}")
+    private boolean enabled;
+
+    @Value("${task.status-writer.flush-interval:100ms}")
+    private Duration flushInterval;
+
+    @Value("${task.status-writer.batch-size:200}")
+    private int batchSize;
+
+    // 任务ID -> 尚未写入的最新状态
+    private final Map<Long, PendingWrite> pending = new ConcurrentHashMap<>();
+
+    // 写入进度时发现租约已被其他节点接管的任务，下次写入该任务时通知调用方后移除
+    private final Set<Long> lostLeases = ConcurrentHashMap.newKeySet();
+
+    // 所在批次写入失败过的条目，提交结果不确定，再次写入影响0行时需要确认是否已经生效
+    private final Set<PendingWrite> retried = ConcurrentHashMap.newKeySet();
+
+    private Counter dropped;
+
+    private Counter leaseLost;
+
+    // 缓冲达到上限时唤醒写入线程
+    private final Semaphore wakeups = new Semaphore(0);
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    /**
+     * 尚未写入的状态
+     * @param finished true为结束状态（finish），false为批量任务进度（updateProgress）
+     * @param onWritten 结束状态写入数据库后的回调，参数为实际写入的任务
+     */
+    private record PendingWrite(AiTask task, boolean finished, LocalDateTime updatedAt, Consumer<AiTask> onWritten) {
+    }
+
+    @PostConstruct
+    public void init() {
+        dropped = Counter.builder("task.status.write.dropped")
+                .description("Buffered task status writes that could not be saved and were dropped")
+                .tag("reason", "invalid")
+                .register(meterRegistry);
+        leaseLost = Counter.builder("task.status.write.dropped")
+                .description("Buffered task status writes that could not be saved and were dropped")
+                .tag("reason", "lease_lost")
+                .register(meterRegistry);
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        writerThread = new Thread(this::runLoop, "TaskStatusWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * 停止时写入缓冲中剩余的所有状态
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        running = false;
+        writerThread.interrupt();
+        writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        while (!pending.isEmpty()) {
+            if (!flush()) {
+                logger.error("停止前写入任务状态失败，{}个任务的状态丢失", pending.size());
+                return;
+            }
+        }
+    }
+
+    /**
+     * 写入结束状态
+     * @param onWritten 写入数据库后在写入线程回调；租约已被接管时不回调
+     * @return 之前的写入发现租约已被其他节点接管时返回false；关闭延迟写入时同步写入并返回是否生效
+     */
+    public boolean finish(AiTask task, Consumer<AiTask> onWritten) {
+        if (!enabled) {
+            if (taskMapper.finish(task) == 0) {
+                return false;
+            }
+            onWritten.accept(task);
+            return true;
+        }
+        return enqueue(new PendingWrite(snapshot(task), true, LocalDateTime.now(), onWritten));
+    }
+
+    /**
+     * 写入批量任务进度，同一任务的多次进度只写入最后一次
+     */
+    public boolean progress(AiTask task) {
+        if (!enabled) {
+            return taskMapper.updateProgress(task) > 0;
+        }
+        return enqueue(new PendingWrite(snapshot(task), false, LocalDateTime.now(), null));
+    }
+
+    /**
+     * 替换已完成任务的结果地址
+     * 替换以数据库中的结束状态为条件，该任务的结束状态还在缓冲中时先等它写入
+     */
+    public boolean replaceResultUrl(Long id, String expected, String replacement) throws InterruptedException {
+        if (enabled && pending.containsKey(id)) {
+            wakeups.release();
+            long deadline = System.nanoTime() + flushInterval.toNanos() * 10;
+            while (pending.containsKey(id) && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(Math.max(1, flushInterval.toMillis() / 2));
+            }
+        }
+        return taskMapper.replaceResultUrl(id, expected, replacement) > 0;
+    }
+
+    /**
+     * 把缓冲中的状态叠加到从数据库读取的任务上
+     */
+    public AiTask apply(AiTask task) {
+        PendingWrite write = task == null ? null : pending.get(task.getId());
+        if (write != null) {
+            AiTask buffered = write.task();
+            if (write.finished()) {
+                task.setStatus(buffered.getStatus());
+                task.setResultUrl(buffered.getResultUrl());
+                task.setErrorMessage(buffered.getErrorMessage());
+            }
+            task.setItemsCompleted(buffered.getItemsCompleted());
+            task.setItemsFailed(buffered.getItemsFailed());
+            task.setUpdatedAt(write.updatedAt());
+        }
+        return task;
+    }
+
+    public TaskStatusView apply(TaskStatusView status) {
+        PendingWrite write = pending.get(status.getId());
+        if (write != null) {
+            AiTask buffered = write.task();
+            if (write.finished()) {
+                status.setStatus(buffered.getStatus());
+                status.setResultUrl(buffered.getResultUrl());
+                status.setErrorMessage(buffered.getErrorMessage());
+            }
+            status.setItemsCompleted(buffered.getItemsCompleted());
+            status.setItemsFailed(buffered.getItemsFailed());
+            status.setUpdatedAt(write.updatedAt());
+        }
+        return status;
+    }
+
+    public TaskSummary apply(TaskSummary summary) {
+        PendingWrite write = pending.get(summary.getId());
+        if (write != null) {
+            AiTask buffered = write.task();
+            if (write.finished()) {
+                summary.setStatus(buffered.getStatus());
+                summary.setResultUrl(buffered.getResultUrl());
+                summary.setErrorMessage(buffered.getErrorMessage());
+            }
+            summary.setItemsCompleted(buffered.getItemsCompleted());
+            summary.setItemsFailed(buffered.getItemsFailed());
+            summary.setUpdatedAt(write.updatedAt());
+        }
+        return summary;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    private boolean enqueue(PendingWrite write) {
+        Long id = write.task().getId();
+        // 结束状态不会被之后的进度覆盖
+        pending.merge(id, write, (previous, next) -> previous.finished() && !next.finished() ? previous : next);
+        if (pending.size() >= batchSize) {
+            wakeups.release();
+        }
+        // 调用方收到租约失效后不会再写入该任务
+        return !lostLeases.remove(id);
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                wakeups.tryAcquire(flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+                wakeups.drainPermits();
+                flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("写入任务状态失败: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 把缓冲中的状态用JDBC批量执行写入
+     * 写入成功后才从缓冲中移除，且只移除写入期间没有被更新过的条目
+     * @return 数据库不可用等原因写入失败时返回false，状态保留在缓冲中下次重试
+     */
+    private boolean flush() {
+        if (pending.isEmpty()) {
+            return true;
+        }
+        // 已被新状态替换的条目不会再写入
+        retried.removeIf(write -> pending.get(write.task().getId()) != write);
+        List<PendingWrite> writes = new ArrayList<>(pending.values());
+        // 相同语句相邻才能合并为一个批次
+        writes.sort(Comparator.comparing(PendingWrite::finished));
+
+        for (int from = 0; from < writes.size(); from += batchSize) {
+            List<PendingWrite> chunk = writes.subList(from, Math.min(from + batchSize, writes.size()));
+            Set<Long> notUpdated = new HashSet<>();
+            try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+                AiTaskMapper batchMapper = session.getMapper(AiTaskMapper.class);
+                for (PendingWrite write : chunk) {
+                    if (write.finished()) {
+                        batchMapper.finish(write.task());
+                    } else {
+                        batchMapper.updateProgress(write.task());
+                    }
+                }
+                List<BatchResult> results = session.flushStatements();
+                session.commit();
+                for (BatchResult result : results) {
+                    int[] counts = result.getUpdateCounts();
+                    List<Object> parameters = result.getParameterObjects();
+                    for (int i = 0; i < counts.length && i < parameters.size(); i++) {
+                        if (counts[i] == 0 && parameters.get(i) instanceof AiTask task) {
+                            notUpdated.add(task.getId());
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                logger.warn("批量写入{}个任务状态失败，逐条重试: {}", chunk.size(), rootMessage(e));
+                retried.addAll(chunk);
+                if (!writeEach(chunk)) {
+                    return false;
+                }
+                continue;
+            }
+            for (PendingWrite write : chunk) {
+                boolean applied = !notUpdated.contains(write.task().getId()) || alreadyApplied(write);
+                written(write);
+                if (applied) {
+                    notifyWritten(write, write.task());
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 逐条写入，找出批次中无法写入的条目
+     * @return 遇到数据库不可用等暂时性错误时返回false，剩余条目留在缓冲中
+     */
+    private boolean writeEach(List<PendingWrite> chunk) {
+        for (PendingWrite write : chunk) {
+            AiTask task = write.task();
+            AiTask saved = null;
+            try {
+                int updated = write.finished() ? taskMapper.finish(task) : taskMapper.updateProgress(task);
+                if (updated > 0 || alreadyApplied(write)) {
+                    saved = task;
+                }
+            } catch (Exception e) {
+                if (!isPermanent(e)) {
+                    logger.error("写入任务{}状态失败，稍后重试: {}", task.getId(), rootMessage(e));
+                    return false;
+                }
+                dropped.increment();
+                if (write.finished() && task.getStatus() == AiTask.TaskStatus.COMPLETED) {
+                    logger.error("任务{}的结果无法保存，改为失败: {}", task.getId(), rootMessage(e));
+                    saved = markFailed(task);
+                } else {
+                    logger.error("任务{}的状态无法保存，已丢弃: {}", task.getId(), rootMessage(e));
+                }
+            }
+            written(write);
+            if (saved != null) {
+                notifyWritten(write, saved);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 结果无法保存时至少让任务结束，避免一直处于处理中直到租约过期后被重复处理
+     * @return 写入的失败状态；未能写入时返回null
+     */
+    private AiTask markFailed(AiTask task) {
+        AiTask failed = snapshot(task);
+        failed.setStatus(AiTask.TaskStatus.FAILED);
+        failed.setResultUrl(null);
+        failed.setErrorMessage("Failed to save task result");
+        try {
+            return taskMapper.finish(failed) > 0 ? failed : null;
+        } catch (Exception e) {
+            logger.error("任务{}的失败状态也无法保存: {}", task.getId(), rootMessage(e));
+            return null;
+        }
+    }
+
+    /**
+     * 数据本身的问题（超长、约束冲突等），重试不会成功；连接失败等资源错误属于暂时性错误
+     */
+    private static boolean isPermanent(Exception e) {
+        return e instanceof DataIntegrityViolationException
+                || (e instanceof NonTransientDataAccessException && !(e instanceof NonTransientDataAccessResourceException));
+    }
+
+    /**
+     * 写入影响0行：租约已被其他节点接管，或者是重试一条已经生效的结束状态（租约已清除）
+     * @return 是已经生效的结束状态
+     */
+    private boolean alreadyApplied(PendingWrite write) {
+        AiTask task = write.task();
+        if (retried.contains(write) && write.finished()) {
+            AiTask current = taskMapper.findById(task.getId());
+            if (current != null && current.getStatus() == task.getStatus() && current.getLeaseOwner() == null) {
+                return true;
+            }
+        }
+        leaseLost.increment();
+        logger.warn("任务{}的租约已失效，{}被丢弃", task.getId(), write.finished() ? "结束状态" + task.getStatus() : "进度");
+        // 结束状态之后调用方不会再写入该任务，无需通知
+        if (!write.finished()) {
+            lostLeases.add(task.getId());
+        }
+        return false;
+    }
+
+    /**
+     * 回调异常不影响其他条目；停机过程中发布事件可能失败
+     */
+    private void notifyWritten(PendingWrite write, AiTask saved) {
+        if (write.onWritten() == null) {
+            return;
+        }
+        try {
+            write.onWritten().accept(saved);
+        } catch (Exception e) {
+            logger.warn("任务{}状态写入后的回调失败: {}", saved.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * MyBatis异常信息以换行开头，日志只输出根本原因
+     */
+    private static String rootMessage(Throwable e) {
+        Throwable cause = e;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage();
+    }
+
+    private void written(PendingWrite write) {
+        retried.remove(write);
+        pending.remove(write.task().getId(), write);
+    }
+
+    /**
+     * 调用方之后还会修改任务对象，缓冲中保存一份副本，包含写入后发布事件和记录指标需要的字段
+     */
+    private static AiTask snapshot(AiTask task) {
+        AiTask copy = new AiTask();
+        copy.setId(task.getId());
+        copy.setUserId(task.getUserId());
+        copy.setType(task.getType());
+        copy.setProvider(task.getProvider());
+        copy.setCreatedAt(task.getCreatedAt());
+        copy.setItemCount(task.getItemCount());
+        copy.setLeaseOwner(task.getLeaseOwner());
+        copy.setStatus(task.getStatus());
+        copy.setResultUrl(task.getResultUrl());
+        copy.setErrorMessage(task.getErrorMessage());
+        copy.setItemsCompleted(task.getItemsCompleted());
+        copy.setItemsFailed(task.getItemsFailed());
+        return copy;
+    }
+}
@@ -0,0 +1,191 @@
+package com.neoaigc.service;
+
+import com.neoaigc.entity.TaskStatusView;
+import com.neoaigc.mapper.AiTaskMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 任务状态SSE推送
+ * 连接基于Servlet异步模式挂起，不占用请求线程；所有推送和心跳都在一个调度线程上串行发送，
+ * 同一用户收到的事件顺序与状态变更顺序一致。
+ */
+@Service
+public class TaskStreamService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskStreamService.class);
+
+    @Autowired
+    private AiTaskMapper taskMapper;
+
+    @Autowired
+    private TaskStatusWriter taskStatusWriter;
+
+    @Value("${task.stream.timeout:1800000}")
+    private long timeoutMillis;
+
+    @Value("${task.stream.heartbeat-interval:20000}")
+    private long heartbeatMillis;
+
+    @Value("${task.stream.max-connections-per-user:5}")
+    private int maxConnectionsPerUser;
+
+    @Value("${task.stream.cluster-poll-interval:0}")
+    private long clusterPollMillis;
+
+    private final Map<String, Set<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService sender;
+
+    private LocalDateTime lastClusterPoll = LocalDateTime.now();
+
+    @PostConstruct
+    public void init() {
+        sender = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "TaskStream");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sender.scheduleWithFixedDelay(this::heartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+        if (clusterPollMillis > 0) {
+            sender.scheduleWithFixedDelay(this::pollClusterUpdates, clusterPollMillis, clusterPollMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+        subscribers.values().forEach(emitters -> emitters.forEach(SseEmitter::complete));
+        subscribers.clear();
+    }
+
+    /**
+     * 为用户建立推送连接
+     */
+    public SseEmitter subscribe(String userId) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        SseEmitter[] evicted = new SseEmitter[1];
+        subscribers.compute(userId, (key, emitters) -> {
+            if (emitters == null) {
+                emitters = new CopyOnWriteArraySet<>();
+            }
+            if (emitters.size() >= maxConnectionsPerUser) {
+                // 超出上限时关闭最早的连接
+                evicted[0] = emitters.iterator().next();
+                emitters.remove(evicted[0]);
+            }
+            emitters.add(emitter);
+            return emitters;
+        });
+        if (evicted[0] != null) {
+            evicted[0].complete();
+        }
+
+        emitter.onCompletion(() -> remove(userId, emitter));
+        emitter.onTimeout(() -> remove(userId, emitter));
+        emitter.onError(e -> remove(userId, emitter));
+
+        sender.execute(() -> send(userId, emitter, SseEmitter.event().comment("connected")));
+        return emitter;
+    }
+
+    /**
+     * 任务状态变更时推送给该用户的所有连接
+     */
+    @EventListener
+    public void onTaskStatus(TaskStatusEvent event) {
+        TaskStatusView status = event.status();
+        if (status.getUserId() == null || !subscribers.containsKey(status.getUserId())) {
+            return;
+        }
+        sender.execute(() -> push(status));
+    }
+
+    public int getConnectionCount() {
+        int count = 0;
+        for (Set<SseEmitter> emitters : subscribers.values()) {
+            count += emitters.size();
+        }
+        return count;
+    }
+
+    private void push(TaskStatusView status) {
+        Set<SseEmitter> emitters = subscribers.get(status.getUserId());
+        if (emitters == null) {
+            return;
+        }
+        for (SseEmitter emitter : emitters) {
+            send(status.getUserId(), emitter, SseEmitter.event()
+                    .name("task")
+                    .id(status.getId() + ":" + status.getStatus())
+                    .data(status, MediaType.APPLICATION_JSON));
+        }
+    }
+
+    private void heartbeat() {
+        subscribers.forEach((userId, emitters) -> {
+            for (SseEmitter emitter : emitters) {
+                send(userId, emitter, SseEmitter.event().comment("ping"));
+            }
+        });
+    }
+
+    /**
+     * 多节点部署时，任务可能由其他节点处理，本节点收不到事件。
+     * 开启后按间隔查询已连接用户的状态变更并推送，一次查询覆盖本节点所有连接。
+     */
+    private void pollClusterUpdates() {
+        try {
+            if (subscribers.isEmpty()) {
+                lastClusterPoll = LocalDateTime.now();
+                return;
+            }
+            // DATETIME精度为秒，往前多取一秒避免漏掉边界上的更新
+            LocalDateTime since = lastClusterPoll.minusSeconds(1);
+            lastClusterPoll = LocalDateTime.now();
+            List<TaskStatusView> changes = taskMapper.findStatusChangedSince(new ArrayList<>(subscribers.keySet()), since);
+            for (TaskStatusView change : changes) {
+                push(taskStatusWriter.apply(change));
+            }
+        } catch (Exception e) {
+            logger.warn("查询任务状态变更失败: {}", e.getMessage());
+        }
+    }
+
+    private void send(String userId, SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+        } catch (IOException | IllegalStateException e) {
+            // 客户端已断开
+            remove(userId, emitter);
+            emitter.completeWithError(e);
+        }
+    }
+
+    private void remove(String userId, SseEmitter emitter) {
+        subscribers.computeIfPresent(userId, (key, emitters) -> {
+            emitters.remove(emitter);
+            return emitters.isEmpty() ? null : emitters;
+        });
+    }
+}
@@ -0,0 +1,164 @@
+package com.neoaigc.service;
+
+import com.neoaigc.entity.AiTask;
+import com.neoaigc.entity.TaskStatusView;
+import com.neoaigc.mapper.AiTaskMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 任务结果长轮询
+ * 请求以DeferredResult挂起，不占用请求线程和数据库连接；任务结束事件到达时立即返回，超时则返回当前状态。
+ * 多节点部署时任务可能由其他节点处理，开启cluster-poll-interval后按间隔查询等待中的任务是否已结束。
+ */
+@Service
+public class TaskWaitService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskWaitService.class);
+
+    // 每次查询的任务数上限
+    private static final int POLL_BATCH_SIZE = 500;
+
+    @Autowired
+    private AiTaskMapper taskMapper;
+
+    @Autowired
+    private TaskStatusWriter taskStatusWriter;
+
+    @Value("${task.wait.cluster-poll-interval:0}")
+    private long clusterPollMillis;
+
+    private final Map<Long, Set<DeferredResult<Map<String, Object>>>> waiters = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService poller;
+
+    @PostConstruct
+    public void init() {
+        if (clusterPollMillis > 0) {
+            poller = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "TaskWait");
+                thread.setDaemon(true);
+                return thread;
+            });
+            poller.scheduleWithFixedDelay(this::pollClusterUpdates, clusterPollMillis, clusterPollMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+    }
+
+    /**
+     * 等待任务结束
+     * @return 任务不存在或不属于该用户时返回null
+     */
+    public DeferredResult<Map<String, Object>> await(Long taskId, String userId, long timeoutMillis) {
+        DeferredResult<Map<String, Object>> result = new DeferredResult<>(timeoutMillis);
+
+        // 先登记再查询状态，避免在两步之间结束的任务被漏掉
+        waiters.compute(taskId, (key, parked) -> {
+            if (parked == null) {
+                parked = ConcurrentHashMap.newKeySet();
+            }
+            parked.add(result);
+            return parked;
+        });
+
+        AiTask task = taskStatusWriter.apply(taskMapper.findById(taskId));
+        if (task == null || !userId.equals(task.getUserId())) {
+            remove(taskId, result);
+            return null;
+        }
+
+        result.onCompletion(() -> remove(taskId, result));
+        result.onTimeout(() -> {
+            AiTask current = taskStatusWriter.apply(taskMapper.findById(taskId));
+            result.setResult(response(TaskStatusView.of(current != null ? current : task)));
+        });
+
+        TaskStatusView status = TaskStatusView.of(task);
+        if (status.isFinished()) {
+            result.setResult(response(status));
+        }
+        return result;
+    }
+
+    @EventListener
+    public void onTaskStatus(TaskStatusEvent event) {
+        wake(event.status());
+    }
+
+    public int getWaiterCount() {
+        int count = 0;
+        for (Set<DeferredResult<Map<String, Object>>> parked : waiters.values()) {
+            count += parked.size();
+        }
+        return count;
+    }
+
+    /**
+     * 查询等待中的任务是否已由其他节点结束，一次查询覆盖多个任务
+     */
+    private void pollClusterUpdates() {
+        try {
+            List<Long> ids = new ArrayList<>(waiters.keySet());
+            for (int from = 0; from < ids.size(); from += POLL_BATCH_SIZE) {
+                List<Long> batch = ids.subList(from, Math.min(from + POLL_BATCH_SIZE, ids.size()));
+                for (TaskStatusView status : taskMapper.findFinishedStatusByIds(batch)) {
+                    wake(taskStatusWriter.apply(status));
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("查询等待中的任务状态失败: {}", e.getMessage());
+        }
+    }
+
+    private void wake(TaskStatusView status) {
+        if (!status.isFinished()) {
+            return;
+        }
+        Set<DeferredResult<Map<String, Object>>> parked = waiters.remove(status.getId());
+        if (parked == null) {
+            return;
+        }
+        Map<String, Object> response = response(status);
+        for (DeferredResult<Map<String, Object>> result : parked) {
+            result.setResult(response);
+        }
+    }
+
+    private void remove(Long taskId, DeferredResult<Map<String, Object>> result) {
+        waiters.computeIfPresent(taskId, (key, parked) -> {
+            parked.remove(result);
+            return parked.isEmpty() ? null : parked;
+        });
+    }
+
+    private static Map<String, Object> response(TaskStatusView status) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", status);
+        result.put("finished", status.isFinished());
+        return result;
+    }
+}
@@ -0,0 +1,159 @@
+package com.neoaigc.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.neoaigc.entity.Template;
+import com.neoaigc.mapper.TemplateMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模板目录缓存
+ * 启用的模板整体加载为不可变快照，列表响应预先序列化为JSON字节并计算ETag，请求时不访问数据库。
+ * 后台按间隔重新查询启用的模板，以序列化结果的哈希为版本，内容变化时才替换快照。
+ * 模板只有几十到几百条，每次全量查询的代价很小；与按更新时间判断相比，同一秒内的多次修改也不会漏掉。
+ */
+@Service
+public class TemplateCatalog {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateCatalog.class);
+
+    @Autowired
+    private TemplateMapper templateMapper;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${template.catalog.refresh-interval:5000}")
+    private long refreshMillis;
+
+    private volatile Snapshot snapshot;
+
+    private ScheduledExecutorService refresher;
+
+    /**
+     * 预序列化的响应体及其ETag
+     */
+    public record Entry(byte[] body, String etag) {
+    }
+
+    private record Snapshot(Entry all, Map<Integer, Entry> byType, Entry empty,
+                            Map<Long, Template> byId) {
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            // 启动时数据库不可用不阻止启动，首次请求时再加载
+            logger.warn("加载模板目录失败: {}", e.getMessage());
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "TemplateCatalog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (Exception e) {
+                logger.warn("刷新模板目录失败: {}", e.getMessage());
+            }
+        }, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * 所有启用的模板
+     */
+    public Entry all() {
+        return current().all();
+    }
+
+    /**
+     * 指定类型的启用模板，没有该类型时返回空列表
+     */
+    public Entry byType(Integer type) {
+        Snapshot current = current();
+        return current.byType().getOrDefault(type, current.empty());
+    }
+
+    /**
+     * 按ID查找启用的模板，未命中返回null
+     */
+    public Template findById(Long id) {
+        return current().byId().get(id);
+    }
+
+    /**
+     * 内容变化时重建快照
+     * @return 是否重建
+     */
+    public synchronized boolean refresh() {
+        List<Template> templates = templateMapper.findAll();
+        Entry all = entry(templates);
+        Snapshot current = snapshot;
+        if (current != null && current.all().etag().equals(all.etag())) {
+            return false;
+        }
+
+        Map<Integer, List<Template>> grouped = new LinkedHashMap<>();
+        Map<Long, Template> byId = new HashMap<>();
+        for (Template template : templates) {
+            grouped.computeIfAbsent(template.getType(), k -> new ArrayList<>()).add(template);
+            byId.put(template.getId(), template);
+        }
+        Map<Integer, Entry> byType = new HashMap<>();
+        grouped.forEach((type, list) -> byType.put(type, entry(list)));
+
+        snapshot = new Snapshot(all, Map.copyOf(byType), entry(List.of()), Map.copyOf(byId));
+        logger.info("模板目录已加载，共{}个模板，版本{}", templates.size(), all.etag());
+        return true;
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            refresh();
+            current = snapshot;
+        }
+        return current;
+    }
+
+    private Entry entry(List<Template> templates) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("data", templates);
+        result.put("total", templates.size());
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(result);
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            String etag = "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+            return new Entry(body, etag);
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("序列化模板目录失败", e);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.neoaigc.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 上传文件存储
+ * 上传内容经通道直接写入磁盘，同一遍读取中计算SHA-256和大小，并根据文件头识别真实格式。
+ * 每次上传只使用固定大小的缓冲区，堆内存占用与文件大小无关。
+ * 文件按内容哈希存放，重复上传相同内容时复用已有文件。
+ */
+@Service
+public class UploadStorageService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadStorageService.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // 识别格式需要的文件头长度
+    private static final int HEADER_SIZE = 12;
+
+    private static final Pattern CONTENT_URL = Pattern.compile("/uploads/(?:[a-z]+/)?[0-9a-f]{2}/[0-9a-f]{2}/([0-9a-f]{64})\\.[a-z0-9]+");
+
+    private static final Set<String> IMAGE_TYPES = Set.of("jpg", "png", "gif", "webp", "bmp");
+
+    @Value("${file.upload-path}")
+    private String uploadPath;
+
+    @Value("${file.max-size:50MB}")
+    private DataSize maxSize;
+
+    @Value("${file.allowed-types:jpg,jpeg,png,gif,webp}")
+    private List<String> allowedTypes;
+
+    /**
+     * 已保存的文件
+     * @param url 访问路径，如 /uploads/ab/cd/abcd...ef.png
+     * @param sha256 内容的SHA-256（十六进制）
+     * @param size 字节数
+     * @param extension 根据文件头识别出的扩展名
+     */
+    public record StoredFile(String url, String sha256, long size, String extension) {
+    }
+
+    /**
+     * 保存上传的图片
+     * @throws IOException 文件过大、格式不支持或写入失败
+     */
+    public StoredFile store(MultipartFile file) throws IOException {
+        if (file.getSize() > maxSize.toBytes()) {
+            throw new IOException("File size exceeds the limit of " + maxSize.toMegabytes() + "MB");
+        }
+
+        Ingest ingest = begin("", maxSize.toBytes());
+        try (InputStream in = file.getInputStream();
+             ReadableByteChannel source = Channels.newChannel(in)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (source.read(buffer) >= 0) {
+                buffer.flip();
+                ingest.write(buffer);
+                buffer.clear();
+            }
+            return ingest.commit(extension -> IMAGE_TYPES.contains(extension) && allowedTypes.contains(extension),
+                    "Only image files are allowed");
+        } finally {
+            ingest.abort();
+        }
+    }
+
+    /**
+     * 开始写入一个内容寻址文件，数据通过返回的通道写入，完成后调用commit
+     * @param directory 存放的子目录，空字符串表示上传目录本身
+     * @param maxBytes 超过该大小时写入失败
+     */
+    public Ingest begin(String directory, long maxBytes) throws IOException {
+        Path uploadDir = Paths.get(uploadPath);
+        Files.createDirectories(uploadDir);
+        // 先写临时文件，校验通过后再移动到最终位置，避免留下不完整的文件
+        Path tempFile = Files.createTempFile(uploadDir, "upload-", ".tmp");
+        try {
+            return new Ingest(directory, tempFile, maxBytes);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+    }
+
+    /**
+     * 写入中的文件
+     * 写入的同时计算SHA-256和大小并保留文件头，commit时识别格式并移动到按内容哈希确定的位置。
+     */
+    public class Ingest implements WritableByteChannel {
+
+        private final String directory;
+        private final Path tempFile;
+        private final long maxBytes;
+        private final FileChannel channel;
+        private final MessageDigest digest;
+        private final byte[] header = new byte[HEADER_SIZE];
+        private int headerLength;
+        private long size;
+
+        private Ingest(String directory, Path tempFile, long maxBytes) throws IOException {
+            this.directory = directory;
+            this.tempFile = tempFile;
+            this.maxBytes = maxBytes;
+            this.channel = FileChannel.open(tempFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int length = src.remaining();
+            size += length;
+            if (size > maxBytes) {
+                throw new IOException("File size exceeds the limit of " + DataSize.ofBytes(maxBytes).toMegabytes() + "MB");
+            }
+            if (headerLength < HEADER_SIZE) {
+                int count = Math.min(HEADER_SIZE - headerLength, length);
+                src.duplicate().get(header, headerLength, count);
+                headerLength += count;
+            }
+            digest.update(src.duplicate());
+            while (src.hasRemaining()) {
+                channel.write(src);
+            }
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        /**
+         * 识别格式并移动到最终位置，相同内容已存在时直接复用
+         * @param accept 允许的扩展名
+         * @throws IOException 格式无法识别或不被允许
+         */
+        public StoredFile commit(Predicate<String> accept, String rejectMessage) throws IOException {
+            channel.close();
+            String extension = sniffExtension(Arrays.copyOf(header, headerLength));
+            if (extension == null || !accept.test(extension)) {
+                throw new IOException(rejectMessage);
+            }
+
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            String relativePath = (directory.isEmpty() ? "" : directory + "/") + contentPath(sha256, extension);
+            Path target = Paths.get(uploadPath).resolve(relativePath);
+            if (!Files.exists(target)) {
+                Files.createDirectories(target.getParent());
+                // 并发写入相同内容时后移动的覆盖先移动的，内容一致
+                Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return new StoredFile("/uploads/" + relativePath, sha256, size, extension);
+        }
+
+        /**
+         * 放弃写入并删除临时文件，commit之后调用无副作用
+         */
+        public void abort() {
+            try {
+                channel.close();
+                Files.deleteIfExists(tempFile);
+            } catch (IOException e) {
+                logger.warn("删除临时文件失败: {}", tempFile);
+            }
+        }
+    }
+
+    /**
+     * 按内容哈希分两级目录存放，如 ab/cd/abcd...ef.png，单个目录下的文件数保持在可控范围
+     */
+    private static String contentPath(String sha256, String extension) {
+        return sha256.substring(0, 2) + "/" + sha256.substring(2, 4) + "/" + sha256 + "." + extension;
+    }
+
+    /**
+     * 从内容寻址的访问路径中取出SHA-256
+     * @return 不是内容寻址路径时返回null
+     */
+    public static String sha256FromUrl(String url) {
+        Matcher matcher = CONTENT_URL.matcher(url);
+        return matcher.matches() ? matcher.group(1) : null;
+    }
+
+    /**
+     * 根据文件头识别格式，不依赖客户端提供的Content-Type
+     * @return 扩展名，无法识别时返回null
+     */
+    private static String sniffExtension(byte[] header) {
+        if (startsWith(header, 0, 0xFF, 0xD8, 0xFF)) {
+            return "jpg";
+        }
+        if (startsWith(header, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "png";
+        }
+        if (startsWith(header, 0, 'G', 'I', 'F', '8')) {
+            return "gif";
+        }
+        if (startsWith(header, 0, 'R', 'I', 'F', 'F') && startsWith(header, 8, 'W', 'E', 'B', 'P')) {
+            return "webp";
+        }
+        if (startsWith(header, 0, 'B', 'M')) {
+            return "bmp";
+        }
+        if (startsWith(header, 4, 'f', 't', 'y', 'p')) {
+            return "mp4";
+        }
+        if (startsWith(header, 0, 'P', 'K', 0x03, 0x04)) {
+            return "zip";
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] data, int offset, int... magic) {
+        if (data.length < offset + magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((data[offset + i] & 0xFF) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,140 @@
+package com.neoaigc.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.neoaigc.entity.User;
+import com.neoaigc.mapper.UserMapper;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+/**
+ * 用户服务，带进程内用户缓存
+ * 读取先查缓存；insert/update写库成功后从库中重新加载并写入缓存，本节点读到的总是最新数据。
+ * 多节点部署时其他节点的修改在缓存TTL内可能不可见。
+ * 返回的User是缓存的副本，调用方修改不会影响缓存。
+ */
+@Service
+public class UserService {
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Value("${user.cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${user.cache.ttl:10m}")
+    private Duration ttl;
+
+    private Cache<Long, User> usersById;
+
+    private Cache<String, Long> idsByOpenId;
+
+    @PostConstruct
+    public void init() {
+        usersById = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        // openId到用户ID的映射不会变化，只需随容量淘汰
+        idsByOpenId = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(ttl)
+                .build();
+    }
+
+    public User findById(Long id) {
+        User user = usersById.getIfPresent(id);
+        if (user == null) {
+            user = userMapper.findById(id);
+            if (user == null) {
+                return null;
+            }
+            cache(user);
+        }
+        return copy(user);
+    }
+
+    public User findByOpenId(String openId) {
+        Long id = idsByOpenId.getIfPresent(openId);
+        if (id != null) {
+            User user = findById(id);
+            if (user != null) {
+                return user;
+            }
+            idsByOpenId.invalidate(openId);
+        }
+        User user = userMapper.findByOpenId(openId);
+        if (user == null) {
+            return null;
+        }
+        cache(user);
+        return copy(user);
+    }
+
+    public int insert(User user) {
+        int rows = userMapper.insert(user);
+        reload(user.getId());
+        return rows;
+    }
+
+    /**
+     * 更新用户（包括余额），写库失败时清除缓存
+     */
+    public int update(User user) {
+        try {
+            int rows = userMapper.update(user);
+            reload(user.getId());
+            return rows;
+        } catch (RuntimeException e) {
+            usersById.invalidate(user.getId());
+            throw e;
+        }
+    }
+
+    public void invalidate(Long id) {
+        usersById.invalidate(id);
+    }
+
+    public CacheStats getCacheStats() {
+        return usersById.stats();
+    }
+
+    public long getCacheSize() {
+        return usersById.estimatedSize();
+    }
+
+    private void reload(Long id) {
+        User fresh = userMapper.findById(id);
+        if (fresh != null) {
+            cache(fresh);
+        } else {
+            usersById.invalidate(id);
+        }
+    }
+
+    private void cache(User user) {
+        usersById.put(user.getId(), user);
+        if (user.getOpenId() != null) {
+            idsByOpenId.put(user.getOpenId(), user.getId());
+        }
+    }
+
+    private static User copy(User source) {
+        User user = new User();
+        user.setId(source.getId());
+        user.setOpenId(source.getOpenId());
+        user.setUnionId(source.getUnionId());
+        user.setNickname(source.getNickname());
+        user.setAvatar(source.getAvatar());
+        user.setBalance(source.getBalance());
+        user.setCreatedAt(source.getCreatedAt());
+        user.setUpdatedAt(source.getUpdatedAt());
+        return user;
+    }
+}
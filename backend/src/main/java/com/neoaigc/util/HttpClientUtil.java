@@ -1,80 +1,306 @@
 package com.neoaigc.util;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import com.neoaigc.config.HttpClientProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.async.methods.AbstractBinResponseConsumer;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.async.methods.SimpleRequestProducer;
+import org.apache.hc.client5.http.async.methods.SimpleResponseConsumer;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.PoolConcurrencyPolicy;
+import org.apache.hc.core5.pool.PoolReusePolicy;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * HTTP客户端工具类
+ * 全局共享一个带连接池的异步客户端：连接复用与keep-alive，HTTPS下通过ALPN协商HTTP/2
  */
+@Component
 public class HttpClientUtil {
 
+    @Autowired
+    private HttpClientProperties properties;
+
+    private CloseableHttpAsyncClient client;
+
+    @PostConstruct
+    public void init() {
+        ConnectionConfig connectionConfig = ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(properties.getConnectTimeout()))
+                .setSocketTimeout(Timeout.ofMilliseconds(properties.getResponseTimeout()))
+                .setTimeToLive(TimeValue.ofMilliseconds(properties.getTimeToLive()))
+                .build();
+
+        PoolingAsyncClientConnectionManager connectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(properties.getMaxTotal())
+                .setMaxConnPerRoute(properties.getMaxPerRoute())
+                .setPoolConcurrencyPolicy(PoolConcurrencyPolicy.STRICT)
+                .setConnPoolPolicy(PoolReusePolicy.LIFO)
+                .setDefaultConnectionConfig(connectionConfig)
+                .setDefaultTlsConfig(TlsConfig.custom()
+                        .setVersionPolicy(HttpVersionPolicy.NEGOTIATE)
+                        .build())
+                .build();
+
+        for (Map.Entry<String, Integer> entry : properties.getMaxPerHost().entrySet()) {
+            URI uri = URI.create(entry.getKey());
+            boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+            int port = uri.getPort() > 0 ? uri.getPort() : (secure ? 443 : 80);
+            HttpHost host = new HttpHost(uri.getScheme(), uri.getHost(), port);
+            connectionManager.setMaxPerRoute(new HttpRoute(host, null, secure), entry.getValue());
+        }
+
+        client = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setIOReactorConfig(IOReactorConfig.custom()
+                        .setIoThreadCount(properties.getIoThreads() > 0
+                                ? properties.getIoThreads()
+                                : Runtime.getRuntime().availableProcessors())
+                        .build())
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setResponseTimeout(Timeout.ofMilliseconds(properties.getResponseTimeout()))
+                        .build())
+                // 流式响应已部分写入sink后不能重放，关闭自动重试
+                .disableAutomaticRetries()
+                .evictIdleConnections(TimeValue.ofMilliseconds(properties.getIdleTimeout()))
+                .evictExpiredConnections()
+                .build();
+        client.start();
+    }
+
+    @PreDestroy
+    public void close() {
+        if (client != null) {
+            client.close(CloseMode.GRACEFUL);
+        }
+    }
+
     /**
      * 发送GET请求
      */
-    public static String get(String urlString) throws Exception {
-        URL url = new URL(urlString);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        
-        connection.setRequestMethod("GET");
-        connection.setRequestProperty("Accept", "application/json");
-        connection.setConnectTimeout(10000);
-        connection.setReadTimeout(10000);
-        
-        int responseCode = connection.getResponseCode();
-        
-        BufferedReader reader;
-        if (responseCode >= 200 && responseCode < 300) {
-            reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
-        } else {
-            reader = new BufferedReader(new InputStreamReader(connection.getErrorStream(), StandardCharsets.UTF_8));
-        }
-        
-        StringBuilder response = new StringBuilder();
-        String line;
-        while ((line = reader.readLine()) != null) {
-            response.append(line);
-        }
-        reader.close();
-        
-        return response.toString();
+    public String get(String url) throws Exception {
+        SimpleHttpRequest request = SimpleRequestBuilder.get(url)
+                .setHeader("Accept", "application/json")
+                .build();
+        return bodyText(await(execute(request, null), null));
     }
 
     /**
      * 发送POST请求
      */
-    public static String post(String urlString, String jsonBody) throws Exception {
-        URL url = new URL(urlString);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
-        connection.setRequestProperty("Accept", "application/json");
-        connection.setDoOutput(true);
-        connection.setConnectTimeout(10000);
-        connection.setReadTimeout(10000);
-        
-        connection.getOutputStream().write(jsonBody.getBytes(StandardCharsets.UTF_8));
-        connection.getOutputStream().flush();
-        
-        int responseCode = connection.getResponseCode();
-        
-        BufferedReader reader;
-        if (responseCode >= 200 && responseCode < 300) {
-            reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
-        } else {
-            reader = new BufferedReader(new InputStreamReader(connection.getErrorStream(), StandardCharsets.UTF_8));
-        }
-        
-        StringBuilder response = new StringBuilder();
-        String line;
-        while ((line = reader.readLine()) != null) {
-            response.append(line);
-        }
-        reader.close();
-        
-        return response.toString();
+    public String post(String url, String jsonBody) throws Exception {
+        return post(url, jsonBody, Map.of(), null);
+    }
+
+    /**
+     * 发送POST请求，可附加请求头并指定响应超时
+     */
+    public String post(String url, String jsonBody, Map<String, String> headers, Duration timeout) throws Exception {
+        SimpleRequestBuilder builder = SimpleRequestBuilder.post(url)
+                .setHeader("Accept", "application/json")
+                .setBody(jsonBody, ContentType.APPLICATION_JSON);
+        headers.forEach(builder::setHeader);
+        return bodyText(await(execute(builder.build(), timeout), timeout));
+    }
+
+    /**
+     * 异步执行请求，响应体完整读入内存，适合小的JSON响应
+     */
+    public CompletableFuture<SimpleHttpResponse> execute(SimpleHttpRequest request, Duration timeout) {
+        if (timeout != null) {
+            request.setConfig(RequestConfig.custom()
+                    .setResponseTimeout(Timeout.of(timeout))
+                    .build());
+        }
+        CompletableFuture<SimpleHttpResponse> future = new CompletableFuture<>();
+        cancelWith(future, client.execute(SimpleRequestProducer.create(request), SimpleResponseConsumer.create(),
+                new CompletableFutureCallback<>(future)));
+        return future;
+    }
+
+    /**
+     * 以字节流方式读取响应体并写入sink，不在内存中缓存整个响应
+     * @return 写入的字节数；非2xx响应以HttpException结束
+     */
+    public CompletableFuture<Long> stream(String url, WritableByteChannel sink, Duration timeout) {
+        SimpleHttpRequest request = SimpleRequestBuilder.get(url).build();
+        if (timeout != null) {
+            request.setConfig(RequestConfig.custom()
+                    .setResponseTimeout(Timeout.of(timeout))
+                    .build());
+        }
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        cancelWith(future, client.execute(SimpleRequestProducer.create(request), new ChannelResponseConsumer(sink),
+                new CompletableFutureCallback<>(future)));
+        return future;
+    }
+
+    /**
+     * 下载到本地文件
+     */
+    public CompletableFuture<Long> download(String url, Path target, Duration timeout) {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<Long> transfer = stream(url, channel, timeout);
+        CompletableFuture<Long> result = transfer.whenComplete((size, error) -> {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // 关闭失败不影响结果
+            }
+        });
+        cancelWith(result, transfer);
+        return result;
+    }
+
+    /**
+     * 等待请求结束，超时或等待线程被中断时取消请求并释放连接
+     */
+    public static <T> T await(CompletableFuture<T> future, Duration timeout) throws Exception {
+        try {
+            // 客户端自身有响应超时，这里多留一点余量兜底
+            if (timeout != null) {
+                return future.get(timeout.toMillis() + 1000, TimeUnit.MILLISECONDS);
+            }
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        } catch (TimeoutException | InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        }
+    }
+
+    /**
+     * future被取消时一并取消底层请求；只取消CompletableFuture不会中止httpclient中的交换，连接会一直被占用
+     */
+    private static void cancelWith(CompletableFuture<?> future, Future<?> request) {
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                request.cancel(true);
+            }
+        });
+    }
+
+    private static String bodyText(SimpleHttpResponse response) {
+        byte[] body = response.getBodyBytes();
+        if (body == null) {
+            return "";
+        }
+        ContentType contentType = response.getContentType();
+        Charset charset = contentType != null && contentType.getCharset() != null
+                ? contentType.getCharset()
+                : StandardCharsets.UTF_8;
+        return new String(body, charset);
+    }
+
+    /**
+     * 把回调转换为CompletableFuture
+     */
+    private static class CompletableFutureCallback<T> implements FutureCallback<T> {
+        private final CompletableFuture<T> future;
+
+        CompletableFutureCallback(CompletableFuture<T> future) {
+            this.future = future;
+        }
+
+        @Override
+        public void completed(T result) {
+            future.complete(result);
+        }
+
+        @Override
+        public void failed(Exception ex) {
+            future.completeExceptionally(ex);
+        }
+
+        @Override
+        public void cancelled() {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * 将响应体按到达的数据块直接写入通道
+     */
+    private static class ChannelResponseConsumer extends AbstractBinResponseConsumer<Long> {
+        private final WritableByteChannel sink;
+        private long written;
+
+        ChannelResponseConsumer(WritableByteChannel sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        protected void start(HttpResponse response, ContentType contentType) throws HttpException {
+            if (response.getCode() < 200 || response.getCode() >= 300) {
+                throw new HttpException("Unexpected HTTP status " + response.getCode());
+            }
+        }
+
+        @Override
+        protected int capacityIncrement() {
+            return 64 * 1024;
+        }
+
+        @Override
+        protected void data(ByteBuffer src, boolean endOfStream) throws IOException {
+            while (src.hasRemaining()) {
+                written += sink.write(src);
+            }
+        }
+
+        @Override
+        protected Long buildResult() {
+            return written;
+        }
+
+        @Override
+        public void releaseResources() {
+            // sink由调用方负责关闭
+        }
     }
 }
@@ -0,0 +1,86 @@
+package com.neoaigc.util;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 相同键的并发调用合并为一次
+ * 第一个调用者执行，其余调用者等待同一结果（或同一异常）。
+ * 执行结束后立即移除键，等待者超时只放弃等待，不影响表中的条目，因此不会残留。
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * 执行或加入相同键的调用
+     * @param timeoutNanos 加入已有调用时的最长等待时间，执行者不受限制
+     * @throws TimeoutException 等待已有调用超时
+     */
+    public V execute(K key, long timeoutNanos, Supplier<V> call) throws TimeoutException, InterruptedException {
+        CompletableFuture<V> existing = flights.get(key);
+        if (existing == null) {
+            CompletableFuture<V> flight = new CompletableFuture<>();
+            existing = flights.putIfAbsent(key, flight);
+            if (existing == null) {
+                return lead(key, flight, call);
+            }
+        }
+
+        coalesced.incrementAndGet();
+        try {
+            return existing.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } catch (CancellationException e) {
+            throw new IllegalStateException("Coalesced call was cancelled", e);
+        }
+    }
+
+    /**
+     * 正在执行的键数
+     */
+    public int getInFlightCount() {
+        return flights.size();
+    }
+
+    /**
+     * 累计被合并的调用数
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    private V lead(K key, CompletableFuture<V> flight, Supplier<V> call) {
+        V result;
+        try {
+            result = call.get();
+        } catch (Throwable t) {
+            // 先移除再完成，之后到达的调用重新执行而不是拿到这次的失败
+            flights.remove(key, flight);
+            flight.completeExceptionally(t);
+            throw t;
+        }
+        flights.remove(key, flight);
+        flight.complete(result);
+        return result;
+    }
+
+    private static RuntimeException rethrow(Throwable cause) {
+        if (cause instanceof RuntimeException runtime) {
+            return runtime;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return new CompletionException(cause);
+    }
+}
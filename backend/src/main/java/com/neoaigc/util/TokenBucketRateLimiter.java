@@ -0,0 +1,63 @@
+package com.neoaigc.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶限流器（GCRA算法）
+ * 只维护一个“理论到达时间”，通过CAS预约令牌，调用方在预约成功后等待到令牌可用时刻
+ */
+public class TokenBucketRateLimiter {
+
+    // 每个令牌的生成间隔
+    private final long intervalNanos;
+
+    // 允许的突发容量对应的时间容差
+    private final long toleranceNanos;
+
+    private final AtomicLong theoreticalArrival;
+
+    public TokenBucketRateLimiter(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive");
+        }
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.toleranceNanos = intervalNanos * (Math.max(burst, 1) - 1);
+        this.theoreticalArrival = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * 预约一个令牌
+     * @param maxWaitNanos 最长可接受的等待时间
+     * @return 需要等待的纳秒数；超过maxWaitNanos时返回-1且不占用令牌
+     */
+    public long reserve(long maxWaitNanos) {
+        while (true) {
+            long now = System.nanoTime();
+            long tat = theoreticalArrival.get();
+            long start = Math.max(tat, now);
+            long waitNanos = Math.max(0, start - toleranceNanos - now);
+            if (waitNanos > maxWaitNanos) {
+                return -1;
+            }
+            if (theoreticalArrival.compareAndSet(tat, start + intervalNanos)) {
+                return waitNanos;
+            }
+        }
+    }
+
+    /**
+     * 获取一个令牌，必要时阻塞等待
+     * @return 在maxWaitNanos内无法获得令牌时返回false
+     */
+    public boolean acquire(long maxWaitNanos) throws InterruptedException {
+        long waitNanos = reserve(maxWaitNanos);
+        if (waitNanos < 0) {
+            return false;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,118 @@
+package com.neoaigc.controller;
+
+import com.neoaigc.entity.AiTask;
+import com.neoaigc.entity.TaskSummary;
+import com.neoaigc.mapper.AiTaskMapper;
+import com.neoaigc.service.TaskStatusWriter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 任务列表的游标分页
+ */
+class TaskControllerListTest {
+
+    private static final String USER = "u1";
+
+    private AiTaskMapper taskMapper;
+    private TaskController controller;
+    private MockHttpServletRequest request;
+
+    @BeforeEach
+    void setUp() {
+        taskMapper = mock(AiTaskMapper.class);
+        controller = new TaskController();
+        ReflectionTestUtils.setField(controller, "taskMapper", taskMapper);
+        ReflectionTestUtils.setField(controller, "taskStatusWriter", mock(TaskStatusWriter.class));
+        ReflectionTestUtils.setField(controller, "maxListPageSize", 100);
+        request = new MockHttpServletRequest();
+        request.setAttribute("userId", USER);
+    }
+
+    @Test
+    void nextCursorRoundTripsLastRow() {
+        LocalDateTime createdAt = LocalDateTime.of(2024, 5, 6, 7, 8, 9, 123_456_000);
+        when(taskMapper.findSummaryPage(eq(USER), isNull(), isNull(), isNull(), eq(3)))
+                .thenReturn(summaries(createdAt, 10, 3));
+        when(taskMapper.countByUser(USER, null)).thenReturn(42L);
+
+        Map<String, Object> first = controller.getUserTasks(null, null, 2, request);
+        assertEquals(true, first.get("success"));
+        assertEquals(true, first.get("hasMore"));
+        assertEquals(2, ((List<?>) first.get("data")).size());
+        assertEquals(42L, first.get("total"));
+
+        String cursor = (String) first.get("nextCursor");
+        assertNotNull(cursor);
+        // 游标可直接放进查询参数
+        assertTrue(cursor.matches("[A-Za-z0-9_-]+"), cursor);
+
+        // 游标指向本页最后一行：id 9，创建时间比第一行早1秒
+        LocalDateTime lastCreatedAt = createdAt.minusSeconds(1);
+        when(taskMapper.findSummaryPage(eq(USER), isNull(), eq(lastCreatedAt), eq(9L), eq(3)))
+                .thenReturn(summaries(lastCreatedAt.minusSeconds(1), 8, 1));
+
+        Map<String, Object> second = controller.getUserTasks(null, cursor, 2, request);
+        assertEquals(true, second.get("success"));
+        assertEquals(false, second.get("hasMore"));
+        assertNull(second.get("nextCursor"));
+        // total只在首页返回
+        assertFalse(second.containsKey("total"));
+        verify(taskMapper).findSummaryPage(USER, null, lastCreatedAt, 9L, 3);
+    }
+
+    @Test
+    void cursorKeepsWholeSecondTimestamps() {
+        LocalDateTime createdAt = LocalDateTime.of(2024, 5, 6, 7, 8, 0);
+        when(taskMapper.findSummaryPage(eq(USER), eq(AiTask.TaskType.TEXT_TO_IMAGE), isNull(), isNull(), eq(2)))
+                .thenReturn(summaries(createdAt, 5, 2));
+
+        Map<String, Object> first = controller.getUserTasks("TEXT_TO_IMAGE", null, 1, request);
+        String decoded = new String(Base64.getUrlDecoder().decode((String) first.get("nextCursor")),
+                StandardCharsets.UTF_8);
+        assertEquals("2024-05-06T07:08|5", decoded);
+
+        controller.getUserTasks("TEXT_TO_IMAGE", (String) first.get("nextCursor"), 1, request);
+        verify(taskMapper).findSummaryPage(USER, AiTask.TaskType.TEXT_TO_IMAGE, createdAt, 5L, 2);
+    }
+
+    @Test
+    void rejectsMalformedCursor() {
+        String missingId = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("2024-05-06T07:08:09".getBytes(StandardCharsets.UTF_8));
+        for (String cursor : List.of("not base64!", missingId,
+                Base64.getUrlEncoder().encodeToString("yesterday|1".getBytes(StandardCharsets.UTF_8)))) {
+            Map<String, Object> result = controller.getUserTasks(null, cursor, 20, request);
+            assertEquals(false, result.get("success"), cursor);
+            assertEquals("Invalid cursor", result.get("message"), cursor);
+        }
+        verify(taskMapper, never()).findSummaryPage(any(), any(), any(), any(), anyInt());
+    }
+
+    /**
+     * 按创建时间倒序的count条摘要，id从firstId递减，每条早1秒
+     */
+    private static List<TaskSummary> summaries(LocalDateTime createdAt, long firstId, int count) {
+        List<TaskSummary> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            TaskSummary summary = new TaskSummary();
+            summary.setId(firstId - i);
+            summary.setCreatedAt(createdAt.minusSeconds(i));
+            list.add(summary);
+        }
+        return list;
+    }
+}
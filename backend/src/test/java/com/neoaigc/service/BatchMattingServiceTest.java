@@ -0,0 +1,183 @@
+package com.neoaigc.service;
+
+import com.neoaigc.config.AiLimitProperties;
+import com.neoaigc.entity.AiTask;
+import com.neoaigc.entity.AiTaskItem;
+import com.neoaigc.mapper.AiTaskItemMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * 批量抠图的部分失败、续做和停机中断
+ */
+class BatchMattingServiceTest {
+
+    private AiTaskItemMapper itemMapper;
+    private TaskQueueService taskQueueService;
+    private GuardedAiService aiService;
+    private BatchMattingService service;
+
+    @BeforeEach
+    void setUp() {
+        itemMapper = mock(AiTaskItemMapper.class);
+        taskQueueService = mock(TaskQueueService.class);
+        when(taskQueueService.progress(any())).thenReturn(true);
+        when(taskQueueService.complete(any(), anyString())).thenReturn(true);
+        when(taskQueueService.fail(any(), anyString())).thenReturn(true);
+
+        aiService = mock(GuardedAiService.class);
+        when(aiService.getProvider()).thenReturn("tencent");
+        AiServiceRegistry registry = mock(AiServiceRegistry.class);
+        when(registry.get(any())).thenReturn(aiService);
+
+        GenerationCacheService cacheService = mock(GenerationCacheService.class);
+        when(cacheService.keyFor(any())).thenReturn("key");
+        ResultMirrorService mirrorService = mock(ResultMirrorService.class);
+        when(mirrorService.mirrorNow(anyString())).thenAnswer(call -> "/uploads/mirror/" + call.getArgument(0));
+
+        service = new BatchMattingService();
+        ReflectionTestUtils.setField(service, "itemMapper", itemMapper);
+        ReflectionTestUtils.setField(service, "taskQueueService", taskQueueService);
+        ReflectionTestUtils.setField(service, "aiServiceRegistry", registry);
+        ReflectionTestUtils.setField(service, "limitProperties", new AiLimitProperties());
+        ReflectionTestUtils.setField(service, "generationCacheService", cacheService);
+        ReflectionTestUtils.setField(service, "resultMirrorService", mirrorService);
+        ReflectionTestUtils.setField(service, "maxThrottleRetries", 5);
+        service.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void failedImageDoesNotFailTask() {
+        AiTask task = task();
+        List<AiTaskItem> items = List.of(item(1, 0), item(2, 1), item(3, 2));
+        when(itemMapper.findByTaskId(task.getId())).thenReturn(items);
+        when(aiService.removeBackground(anyString())).thenAnswer(call -> {
+            if (call.getArgument(0).equals("b.png")) {
+                throw new IllegalStateException("unsupported image");
+            }
+            return call.getArgument(0);
+        });
+
+        service.process(task);
+
+        verify(itemMapper, times(3)).finish(any());
+        assertEquals(AiTask.TaskStatus.FAILED, items.get(1).getStatus());
+        assertEquals("unsupported image", items.get(1).getErrorMessage());
+        assertEquals(2, task.getItemsCompleted());
+        assertEquals(1, task.getItemsFailed());
+        // 结果为第一张成功的图片
+        verify(taskQueueService).complete(task, "/uploads/mirror/a.png");
+        assertEquals("1 of 3 images failed", task.getErrorMessage());
+    }
+
+    @Test
+    void allImagesFailedFailsTask() {
+        AiTask task = task();
+        when(itemMapper.findByTaskId(task.getId())).thenReturn(List.of(item(1, 0), item(2, 1)));
+        when(aiService.removeBackground(anyString())).thenThrow(new IllegalStateException("provider error"));
+
+        service.process(task);
+
+        verify(taskQueueService).fail(task, "All 2 images failed");
+        verify(taskQueueService, never()).complete(any(), any());
+    }
+
+    @Test
+    void reclaimedTaskOnlyProcessesUnfinishedItems() {
+        AiTask task = task();
+        AiTaskItem done = item(1, 0);
+        done.setStatus(AiTask.TaskStatus.COMPLETED);
+        done.setResultUrl("/uploads/mirror/a.png");
+        AiTaskItem failed = item(2, 1);
+        failed.setStatus(AiTask.TaskStatus.FAILED);
+        AiTaskItem pending = item(3, 2);
+        when(itemMapper.findByTaskId(task.getId())).thenReturn(List.of(done, failed, pending));
+        when(aiService.removeBackground(anyString())).thenAnswer(call -> call.getArgument(0));
+
+        service.process(task);
+
+        verify(aiService, times(1)).removeBackground(anyString());
+        verify(aiService).removeBackground("c.png");
+        verify(itemMapper, times(1)).finish(pending);
+        // 进度包含上次已结束的子项
+        assertEquals(2, task.getItemsCompleted());
+        assertEquals(1, task.getItemsFailed());
+        verify(taskQueueService).complete(task, "/uploads/mirror/a.png");
+    }
+
+    @Test
+    void interruptedTaskIsReleasedAfterWorkersStop() throws Exception {
+        AiTask task = task();
+        when(itemMapper.findByTaskId(task.getId())).thenReturn(List.of(item(1, 0)));
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean stopped = new AtomicBoolean();
+        when(aiService.removeBackground(anyString())).thenAnswer(call -> {
+            started.countDown();
+            try {
+                TimeUnit.MINUTES.sleep(1);
+                return call.getArgument(0);
+            } catch (InterruptedException e) {
+                // 模拟中断后仍需一点时间才能退出的调用
+                TimeUnit.MILLISECONDS.sleep(200);
+                stopped.set(true);
+                throw new IllegalStateException(e);
+            }
+        });
+        AtomicBoolean stoppedBeforeRelease = new AtomicBoolean();
+        when(taskQueueService.release(eq(task), eq(0))).thenAnswer(call -> {
+            stoppedBeforeRelease.set(stopped.get());
+            return true;
+        });
+
+        Thread processing = new Thread(() -> service.process(task));
+        processing.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        processing.interrupt();
+        processing.join(5000);
+
+        assertFalse(processing.isAlive());
+        verify(taskQueueService).release(task, 0);
+        assertTrue(stoppedBeforeRelease.get());
+        // 被中断的图片保持等待状态，任务不写入最终状态
+        verify(itemMapper, never()).finish(any());
+        verify(taskQueueService, never()).complete(any(), any());
+        verify(taskQueueService, never()).fail(any(), any());
+    }
+
+    private static AiTask task() {
+        AiTask task = new AiTask();
+        task.setId(7L);
+        task.setType(AiTask.TaskType.BATCH_MATTING);
+        task.setProvider("tencent");
+        task.setItemCount(3);
+        return task;
+    }
+
+    private static AiTaskItem item(long id, int seq) {
+        AiTaskItem item = new AiTaskItem();
+        item.setId(id);
+        item.setTaskId(7L);
+        item.setSeq(seq);
+        item.setImageUrl((char) ('a' + seq) + ".png");
+        item.setStatus(AiTask.TaskStatus.PENDING);
+        return item;
+    }
+}
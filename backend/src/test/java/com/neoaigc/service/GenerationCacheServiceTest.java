@@ -0,0 +1,252 @@
+package com.neoaigc.service;
+
+import com.neoaigc.config.GenerationCacheProperties;
+import com.neoaigc.entity.AiTask;
+import com.neoaigc.entity.GenerationCacheEntry;
+import com.neoaigc.mapper.GenerationCacheMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * 生成结果缓存的键和有效期
+ */
+class GenerationCacheServiceTest {
+
+    private static final String REMOTE_URL = "https://provider.example.com/result.png?signature=abc";
+    private static final String MIRROR_URL = "/uploads/mirror/ab/cd/"
+            + "abcd000000000000000000000000000000000000000000000000000000000000.png";
+
+    @TempDir
+    Path uploadDir;
+
+    private GenerationCacheMapper cacheMapper;
+    private GenerationCacheProperties properties;
+    private GenerationCacheService service;
+
+    @BeforeEach
+    void setUp() {
+        cacheMapper = mock(GenerationCacheMapper.class);
+        properties = new GenerationCacheProperties();
+        properties.getTtl().put(AiTask.TaskType.TEXT_TO_IMAGE, Duration.ofDays(7));
+        properties.getTtl().put(AiTask.TaskType.FACE_SWAP, Duration.ZERO);
+        properties.setRemoteTtl(Duration.ofMinutes(50));
+
+        AiServiceRegistry registry = mock(AiServiceRegistry.class);
+        GuardedAiService tencent = mock(GuardedAiService.class);
+        when(tencent.getProvider()).thenReturn("tencent");
+        GuardedAiService aliyun = mock(GuardedAiService.class);
+        when(aliyun.getProvider()).thenReturn("aliyun");
+        when(registry.get(any())).thenReturn(tencent);
+        when(registry.get("aliyun")).thenReturn(aliyun);
+
+        service = new GenerationCacheService();
+        ReflectionTestUtils.setField(service, "cacheMapper", cacheMapper);
+        ReflectionTestUtils.setField(service, "properties", properties);
+        ReflectionTestUtils.setField(service, "aiServiceRegistry", registry);
+        ReflectionTestUtils.setField(service, "uploadPath", uploadDir.toString());
+        service.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void keyIgnoresWhitespaceButKeepsCase() {
+        String key = service.keyFor(task(AiTask.TaskType.TEXT_TO_IMAGE, "a red  fox", null));
+        assertEquals(64, key.length());
+        assertEquals(key, service.keyFor(task(AiTask.TaskType.TEXT_TO_IMAGE, "  a red\n\tfox ", null)));
+        // 全角字符经NFKC归一化
+        assertEquals(key, service.keyFor(task(AiTask.TaskType.TEXT_TO_IMAGE, "ａ red fox", null)));
+        assertNotEquals(key, service.keyFor(task(AiTask.TaskType.TEXT_TO_IMAGE, "A red fox", null)));
+    }
+
+    @Test
+    void keyDependsOnProviderAndType() {
+        AiTask tencent = task(AiTask.TaskType.IMAGE_TO_IMAGE, "cat", null);
+        AiTask aliyun = task(AiTask.TaskType.IMAGE_TO_IMAGE, "cat", null);
+        aliyun.setProvider("aliyun");
+        AiTask otherType = task(AiTask.TaskType.TEXT_TO_IMAGE, "cat", null);
+
+        String key = service.keyFor(tencent);
+        assertNotEquals(key, service.keyFor(aliyun));
+        assertNotEquals(key, service.keyFor(otherType));
+    }
+
+    @Test
+    void keyUsesImageContent() throws Exception {
+        String hash = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+        String contentUrl = "/uploads/01/23/" + hash + ".png";
+        Files.writeString(uploadDir.resolve("a.png"), "same bytes");
+        Files.writeString(uploadDir.resolve("b.png"), "same bytes");
+        Files.writeString(uploadDir.resolve("c.png"), "other bytes");
+
+        // 内容寻址的路径直接取路径中的哈希，不读取文件
+        assertNotNull(service.keyFor(task(AiTask.TaskType.IMAGE_TO_IMAGE, "cat", contentUrl)));
+        // 旧路径按文件内容计算，内容相同的文件得到相同的键
+        String a = service.keyFor(task(AiTask.TaskType.IMAGE_TO_IMAGE, "cat", "/uploads/a.png"));
+        assertEquals(a, service.keyFor(task(AiTask.TaskType.IMAGE_TO_IMAGE, "cat", "/uploads/b.png")));
+        assertNotEquals(a, service.keyFor(task(AiTask.TaskType.IMAGE_TO_IMAGE, "cat", "/uploads/c.png")));
+        // 无法读取的输入图片不缓存
+        assertNull(service.keyFor(task(AiTask.TaskType.IMAGE_TO_IMAGE, "cat", "/uploads/missing.png")));
+        assertNull(service.keyFor(task(AiTask.TaskType.IMAGE_TO_IMAGE, "cat", "/uploads/../outside.png")));
+    }
+
+    @Test
+    void remoteResultIsCachedForRemoteTtlOnly() {
+        AiTask task = task(AiTask.TaskType.TEXT_TO_IMAGE, "cat", null);
+        String key = service.keyFor(task);
+
+        service.store(key, task, REMOTE_URL);
+
+        GenerationCacheEntry entry = stored();
+        assertEquals(REMOTE_URL, entry.getResultUrl());
+        assertEquals("tencent", entry.getProvider());
+        assertExpiresIn(entry, Duration.ofMinutes(50));
+        assertEquals(REMOTE_URL, service.lookup(task, key));
+    }
+
+    @Test
+    void localResultIsCachedForTypeTtl() throws Exception {
+        mirrorFile();
+        AiTask task = task(AiTask.TaskType.TEXT_TO_IMAGE, "cat", null);
+        String key = service.keyFor(task);
+
+        service.store(key, task, MIRROR_URL);
+
+        assertExpiresIn(stored(), Duration.ofDays(7));
+        assertEquals(MIRROR_URL, service.lookup(task, key));
+    }
+
+    @Test
+    void typeWithZeroTtlIsNotCached() {
+        AiTask task = task(AiTask.TaskType.FACE_SWAP, "cat", null);
+        String key = service.keyFor(task);
+
+        service.store(key, task, REMOTE_URL);
+
+        assertNull(service.lookup(task, key));
+        verifyNoInteractions(cacheMapper);
+    }
+
+    @Test
+    void evictedMirrorFileIsAMiss() throws Exception {
+        Path file = mirrorFile();
+        AiTask task = task(AiTask.TaskType.TEXT_TO_IMAGE, "cat", null);
+        String key = service.keyFor(task);
+        service.store(key, task, MIRROR_URL);
+        assertEquals(MIRROR_URL, service.lookup(task, key));
+
+        Files.delete(file);
+        GenerationCacheEntry entry = entry(MIRROR_URL, LocalDateTime.now().minusDays(1), LocalDateTime.now().plusDays(6));
+        when(cacheMapper.findValid(key)).thenReturn(entry);
+
+        // 内存层和数据库中的条目都指向已被淘汰的文件
+        assertNull(service.lookup(task, key));
+        assertNull(service.lookup(task, key));
+    }
+
+    @Test
+    void remoteEntryFromDatabaseIsCappedByCreationTime() {
+        AiTask task = task(AiTask.TaskType.TEXT_TO_IMAGE, "cat", null);
+        String key = service.keyFor(task);
+
+        // 旧版本按类型有效期写入的远程地址，签名已过期
+        when(cacheMapper.findValid(key)).thenReturn(
+                entry(REMOTE_URL, LocalDateTime.now().minusHours(2), LocalDateTime.now().plusDays(5)));
+        assertNull(service.lookup(task, key));
+
+        when(cacheMapper.findValid(key)).thenReturn(
+                entry(REMOTE_URL, LocalDateTime.now().minusMinutes(10), LocalDateTime.now().plusDays(5)));
+        assertEquals(REMOTE_URL, service.lookup(task, key));
+    }
+
+    @Test
+    void databaseFailureIsAMiss() {
+        AiTask task = task(AiTask.TaskType.TEXT_TO_IMAGE, "cat", null);
+        when(cacheMapper.findValid(anyString())).thenThrow(new IllegalStateException("database down"));
+        assertNull(service.lookup(task, service.keyFor(task)));
+    }
+
+    @Test
+    void mirroredResultReplacesRemoteEntryWithTypeTtl() throws Exception {
+        mirrorFile();
+        AiTask task = task(AiTask.TaskType.TEXT_TO_IMAGE, "cat", null);
+        String key = service.keyFor(task);
+        service.store(key, task, REMOTE_URL);
+
+        service.replaceResultUrl(task, REMOTE_URL, MIRROR_URL);
+
+        ArgumentCaptor<GenerationCacheEntry> entries = ArgumentCaptor.forClass(GenerationCacheEntry.class);
+        verify(cacheMapper, times(2)).upsert(entries.capture());
+        GenerationCacheEntry replaced = entries.getValue();
+        assertEquals(key, replaced.getCacheKey());
+        assertEquals(MIRROR_URL, replaced.getResultUrl());
+        assertExpiresIn(replaced, Duration.ofDays(7));
+        assertEquals(MIRROR_URL, service.lookup(task, key));
+    }
+
+    @Test
+    void mirroredResultDoesNotReplaceOtherEntry() throws Exception {
+        mirrorFile();
+        AiTask task = task(AiTask.TaskType.TEXT_TO_IMAGE, "cat", null);
+        String key = service.keyFor(task);
+        service.store(key, task, MIRROR_URL);
+
+        service.replaceResultUrl(task, REMOTE_URL, "/uploads/mirror/other.png");
+
+        verify(cacheMapper, times(1)).upsert(any());
+        assertEquals(MIRROR_URL, service.lookup(task, key));
+    }
+
+    private Path mirrorFile() throws Exception {
+        Path file = uploadDir.resolve(MIRROR_URL.substring("/uploads/".length()));
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, "png");
+        return file;
+    }
+
+    private GenerationCacheEntry stored() {
+        ArgumentCaptor<GenerationCacheEntry> entry = ArgumentCaptor.forClass(GenerationCacheEntry.class);
+        verify(cacheMapper).upsert(entry.capture());
+        return entry.getValue();
+    }
+
+    private static void assertExpiresIn(GenerationCacheEntry entry, Duration ttl) {
+        LocalDateTime expected = LocalDateTime.now().plus(ttl);
+        Duration difference = Duration.between(entry.getExpiresAt(), expected).abs();
+        assertTrue(difference.compareTo(Duration.ofMinutes(1)) < 0, "过期时间: " + entry.getExpiresAt());
+    }
+
+    private static GenerationCacheEntry entry(String resultUrl, LocalDateTime createdAt, LocalDateTime expiresAt) {
+        GenerationCacheEntry entry = new GenerationCacheEntry();
+        entry.setResultUrl(resultUrl);
+        entry.setCreatedAt(createdAt);
+        entry.setExpiresAt(expiresAt);
+        return entry;
+    }
+
+    private static AiTask task(AiTask.TaskType type, String prompt, String imageUrl) {
+        AiTask task = new AiTask();
+        task.setType(type);
+        task.setPrompt(prompt);
+        task.setImageUrl(imageUrl);
+        task.setProvider("tencent");
+        return task;
+    }
+}
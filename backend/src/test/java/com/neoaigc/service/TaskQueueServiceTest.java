@@ -0,0 +1,142 @@
+package com.neoaigc.service;
+
+import com.neoaigc.entity.AiTask;
+import com.neoaigc.mapper.AiTaskMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+/**
+ * 任务的领取和放回
+ */
+class TaskQueueServiceTest {
+
+    private AiTaskMapper taskMapper;
+    private ApplicationEventPublisher eventPublisher;
+    private TaskMetrics taskMetrics;
+    private TaskQueueService service;
+
+    @BeforeEach
+    void setUp() {
+        taskMapper = mock(AiTaskMapper.class);
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        taskMetrics = mock(TaskMetrics.class);
+
+        service = new TaskQueueService();
+        ReflectionTestUtils.setField(service, "taskMapper", taskMapper);
+        ReflectionTestUtils.setField(service, "eventPublisher", eventPublisher);
+        ReflectionTestUtils.setField(service, "taskMetrics", taskMetrics);
+        ReflectionTestUtils.setField(service, "leaseSeconds", 120);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void claimMarksTasksProcessing() {
+        AiTask pending = task(1L, AiTask.TaskStatus.PENDING, null);
+        // 租约过期后被重新领取的任务
+        AiTask expired = task(2L, AiTask.TaskStatus.PROCESSING, 2);
+        when(taskMapper.lockClaimable(10)).thenReturn(List.of(pending, expired));
+
+        List<AiTask> tasks = service.claim("worker-1", 10);
+
+        assertEquals(List.of(pending, expired), tasks);
+        verify(taskMapper).markClaimed(List.of(1L, 2L), "worker-1", 120);
+        for (AiTask task : tasks) {
+            assertEquals(AiTask.TaskStatus.PROCESSING, task.getStatus());
+            assertEquals("worker-1", task.getLeaseOwner());
+            assertNotNull(task.getUpdatedAt());
+        }
+        assertEquals(1, pending.getAttempts());
+        assertEquals(3, expired.getAttempts());
+        // 排队时间只记录首次领取
+        verify(taskMetrics).recordClaimed(pending);
+        verify(taskMetrics, never()).recordClaimed(expired);
+
+        // 没有事务时直接发布
+        ArgumentCaptor<TaskStatusEvent> events = ArgumentCaptor.forClass(TaskStatusEvent.class);
+        verify(eventPublisher, times(2)).publishEvent(events.capture());
+        assertEquals(1L, events.getAllValues().get(0).status().getId());
+        assertEquals(AiTask.TaskStatus.PROCESSING, events.getAllValues().get(1).status().getStatus());
+    }
+
+    @Test
+    void claimPublishesOnlyAfterCommit() {
+        when(taskMapper.lockClaimable(10)).thenReturn(List.of(task(1L, AiTask.TaskStatus.PENDING, 0)));
+        TransactionSynchronizationManager.initSynchronization();
+
+        service.claim("worker-1", 10);
+
+        verify(eventPublisher, never()).publishEvent(any());
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        // 回滚时不推送
+        synchronizations.forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        verify(eventPublisher, never()).publishEvent(any());
+
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+        verify(eventPublisher).publishEvent(any(TaskStatusEvent.class));
+    }
+
+    @Test
+    void claimWithNothingClaimable() {
+        assertTrue(service.claim("worker-1", 0).isEmpty());
+        verifyNoInteractions(taskMapper);
+
+        when(taskMapper.lockClaimable(10)).thenReturn(List.of());
+        assertTrue(service.claim("worker-1", 10).isEmpty());
+        verify(taskMapper, never()).markClaimed(any(), any(), anyInt());
+        verifyNoInteractions(eventPublisher, taskMetrics);
+    }
+
+    @Test
+    void releaseReturnsTaskToQueue() {
+        AiTask task = task(1L, AiTask.TaskStatus.PROCESSING, 1);
+        task.setLeaseOwner("worker-1");
+        when(taskMapper.release(1L, "worker-1", 30)).thenReturn(1);
+
+        assertTrue(service.release(task, 30));
+
+        assertEquals(AiTask.TaskStatus.PENDING, task.getStatus());
+        verify(taskMetrics).recordRequeued(task);
+        ArgumentCaptor<TaskStatusEvent> event = ArgumentCaptor.forClass(TaskStatusEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertEquals(AiTask.TaskStatus.PENDING, event.getValue().status().getStatus());
+    }
+
+    @Test
+    void releaseAfterLeaseLostIsIgnored() {
+        AiTask task = task(1L, AiTask.TaskStatus.PROCESSING, 1);
+        task.setLeaseOwner("worker-1");
+        when(taskMapper.release(1L, "worker-1", 0)).thenReturn(0);
+
+        assertFalse(service.release(task, 0));
+
+        verifyNoInteractions(eventPublisher, taskMetrics);
+    }
+
+    private static AiTask task(Long id, AiTask.TaskStatus status, Integer attempts) {
+        AiTask task = new AiTask();
+        task.setId(id);
+        task.setType(AiTask.TaskType.TEXT_TO_IMAGE);
+        task.setStatus(status);
+        task.setAttempts(attempts);
+        return task;
+    }
+}
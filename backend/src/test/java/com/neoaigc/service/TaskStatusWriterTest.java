@@ -0,0 +1,309 @@
+package com.neoaigc.service;
+
+import com.neoaigc.entity.AiTask;
+import com.neoaigc.mapper.AiTaskMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * 任务状态延迟写入：合并、写入后回调、批次失败后逐条重试和停止时写入
+ * 后台线程的间隔设为1小时，由测试直接调用flush
+ */
+class TaskStatusWriterTest {
+
+    private AiTaskMapper taskMapper;
+    private SqlSession session;
+    private SimpleMeterRegistry meterRegistry;
+    private TaskStatusWriter writer;
+
+    // 当前批次中执行的语句参数
+    private final List<AiTask> batched = new ArrayList<>();
+    private ToIntFunction<AiTask> batchCounts = task -> 1;
+    private RuntimeException batchFailure;
+
+    @BeforeEach
+    void setUp() {
+        taskMapper = mock(AiTaskMapper.class);
+        session = mock(SqlSession.class);
+        AiTaskMapper batchMapper = mock(AiTaskMapper.class);
+        SqlSessionFactory sqlSessionFactory = mock(SqlSessionFactory.class);
+        when(sqlSessionFactory.openSession(ExecutorType.BATCH)).thenReturn(session);
+        when(session.getMapper(AiTaskMapper.class)).thenReturn(batchMapper);
+        when(batchMapper.finish(any())).thenAnswer(invocation -> {
+            batched.add(invocation.getArgument(0));
+            return 0;
+        });
+        when(batchMapper.updateProgress(any())).thenAnswer(invocation -> {
+            batched.add(invocation.getArgument(0));
+            return 0;
+        });
+        when(session.flushStatements()).thenAnswer(invocation -> {
+            if (batchFailure != null) {
+                batched.clear();
+                throw batchFailure;
+            }
+            BatchResult result = new BatchResult(null, "UPDATE ai_tasks");
+            int[] counts = new int[batched.size()];
+            for (int i = 0; i < batched.size(); i++) {
+                result.addParameterObject(batched.get(i));
+                counts[i] = batchCounts.applyAsInt(batched.get(i));
+            }
+            result.setUpdateCounts(counts);
+            batched.clear();
+            return List.of(result);
+        });
+
+        meterRegistry = new SimpleMeterRegistry();
+        writer = new TaskStatusWriter();
+        ReflectionTestUtils.setField(writer, "taskMapper", taskMapper);
+        ReflectionTestUtils.setField(writer, "sqlSessionFactory", sqlSessionFactory);
+        ReflectionTestUtils.setField(writer, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(writer, "enabled", true);
+        ReflectionTestUtils.setField(writer, "flushInterval", Duration.ofHours(1));
+        ReflectionTestUtils.setField(writer, "batchSize", 100);
+        writer.init();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        writer.shutdown();
+    }
+
+    @Test
+    void coalescesWritesForSameTask() {
+        AiTask task = task(1L, AiTask.TaskStatus.PROCESSING);
+        task.setItemsCompleted(1);
+        assertTrue(writer.progress(task));
+        task.setItemsCompleted(2);
+        assertTrue(writer.progress(task));
+        assertEquals(1, writer.getPendingCount());
+
+        task.setStatus(AiTask.TaskStatus.COMPLETED);
+        task.setResultUrl("/uploads/result.zip");
+        assertTrue(writer.finish(task, written -> { }));
+        // 结束状态不会被之后的进度覆盖
+        task.setStatus(AiTask.TaskStatus.PROCESSING);
+        writer.progress(task);
+        assertEquals(1, writer.getPendingCount());
+
+        AiTask read = task(1L, AiTask.TaskStatus.PROCESSING);
+        writer.apply(read);
+        assertEquals(AiTask.TaskStatus.COMPLETED, read.getStatus());
+        assertEquals("/uploads/result.zip", read.getResultUrl());
+        assertEquals(2, read.getItemsCompleted());
+
+        assertTrue(flush());
+        assertEquals(0, writer.getPendingCount());
+        verify(session).commit();
+    }
+
+    @Test
+    void finishIsReportedOnlyAfterCommit() {
+        @SuppressWarnings("unchecked")
+        Consumer<AiTask> onWritten = mock(Consumer.class);
+        AiTask task = task(1L, AiTask.TaskStatus.COMPLETED);
+        task.setResultUrl("/uploads/a.png");
+        writer.finish(task, onWritten);
+        // 调用方之后修改任务对象不影响缓冲中的状态
+        task.setResultUrl("changed");
+        verifyNoInteractions(onWritten);
+
+        assertTrue(flush());
+
+        ArgumentCaptor<AiTask> written = ArgumentCaptor.forClass(AiTask.class);
+        InOrder order = inOrder(session, onWritten);
+        order.verify(session).commit();
+        order.verify(onWritten).accept(written.capture());
+        assertEquals(AiTask.TaskStatus.COMPLETED, written.getValue().getStatus());
+        assertEquals("/uploads/a.png", written.getValue().getResultUrl());
+        // 事件按用户推送，指标按类型和提供商统计
+        assertEquals("u1", written.getValue().getUserId());
+        assertEquals(AiTask.TaskType.TEXT_TO_IMAGE, written.getValue().getType());
+        assertEquals("simulated", written.getValue().getProvider());
+    }
+
+    @Test
+    void finishWithLostLeaseIsDroppedWithoutCallback() {
+        @SuppressWarnings("unchecked")
+        Consumer<AiTask> onWritten = mock(Consumer.class);
+        batchCounts = task -> 0;
+        writer.finish(task(1L, AiTask.TaskStatus.COMPLETED), onWritten);
+
+        assertTrue(flush());
+
+        verifyNoInteractions(onWritten);
+        assertEquals(0, writer.getPendingCount());
+        assertEquals(1, droppedCount("lease_lost"));
+    }
+
+    @Test
+    void lostLeaseOnProgressIsReportedOnce() {
+        batchCounts = task -> 0;
+        AiTask task = task(1L, AiTask.TaskStatus.PROCESSING);
+        assertTrue(writer.progress(task));
+        assertTrue(flush());
+
+        batchCounts = written -> 1;
+        assertFalse(writer.progress(task));
+        // 通知后不再保留，之后的写入不受影响
+        assertTrue(writer.progress(task));
+        assertEquals(1, droppedCount("lease_lost"));
+    }
+
+    @Test
+    void failedBatchIsRetriedRowByRow() {
+        batchFailure = new PersistenceException("Data too long for column 'result_url'");
+        AiTask tooLong = task(1L, AiTask.TaskStatus.COMPLETED);
+        tooLong.setResultUrl("x".repeat(2000));
+        AiTask valid = task(2L, AiTask.TaskStatus.COMPLETED);
+        valid.setResultUrl("/uploads/b.png");
+
+        when(taskMapper.finish(argThat(task -> task != null && task.getId() == 1L
+                && task.getStatus() == AiTask.TaskStatus.COMPLETED)))
+                .thenThrow(new DataIntegrityViolationException("Data too long for column 'result_url'"));
+        when(taskMapper.finish(argThat(task -> task != null && (task.getId() == 2L
+                || task.getStatus() == AiTask.TaskStatus.FAILED)))).thenReturn(1);
+
+        List<AiTask> written = new ArrayList<>();
+        writer.finish(tooLong, written::add);
+        writer.finish(valid, written::add);
+
+        assertTrue(flush());
+
+        assertEquals(0, writer.getPendingCount());
+        assertEquals(2, written.size());
+        AiTask failed = written.stream().filter(task -> task.getId() == 1L).findFirst().orElseThrow();
+        // 结果无法保存的任务改为失败，推送的是实际写入的失败状态
+        assertEquals(AiTask.TaskStatus.FAILED, failed.getStatus());
+        assertNull(failed.getResultUrl());
+        assertEquals("u1", failed.getUserId());
+        AiTask completed = written.stream().filter(task -> task.getId() == 2L).findFirst().orElseThrow();
+        assertEquals(AiTask.TaskStatus.COMPLETED, completed.getStatus());
+        assertEquals(1, droppedCount("invalid"));
+    }
+
+    @Test
+    void transientFailureKeepsWritesBuffered() {
+        batchFailure = new PersistenceException("Communications link failure");
+        when(taskMapper.finish(any())).thenThrow(new TransientDataAccessResourceException("Communications link failure"));
+        @SuppressWarnings("unchecked")
+        Consumer<AiTask> onWritten = mock(Consumer.class);
+        writer.finish(task(1L, AiTask.TaskStatus.COMPLETED), onWritten);
+
+        assertFalse(flush());
+
+        assertEquals(1, writer.getPendingCount());
+        verifyNoInteractions(onWritten);
+        AiTask read = writer.apply(task(1L, AiTask.TaskStatus.PROCESSING));
+        assertEquals(AiTask.TaskStatus.COMPLETED, read.getStatus());
+
+        // 数据库恢复后下次写入成功
+        batchFailure = null;
+        assertTrue(flush());
+        assertEquals(0, writer.getPendingCount());
+        verify(onWritten).accept(any());
+    }
+
+    @Test
+    void retriedFinishThatAlreadyCommittedIsReported() {
+        // 批次提交结果不确定，逐条重试时影响0行，但数据库中已是该结束状态
+        batchFailure = new PersistenceException("Lock wait timeout exceeded");
+        when(taskMapper.finish(any())).thenReturn(0);
+        AiTask current = task(1L, AiTask.TaskStatus.COMPLETED);
+        current.setLeaseOwner(null);
+        when(taskMapper.findById(1L)).thenReturn(current);
+        @SuppressWarnings("unchecked")
+        Consumer<AiTask> onWritten = mock(Consumer.class);
+        writer.finish(task(1L, AiTask.TaskStatus.COMPLETED), onWritten);
+
+        assertTrue(flush());
+
+        verify(onWritten).accept(any());
+        assertEquals(0, droppedCount("lease_lost"));
+    }
+
+    @Test
+    void callbackFailureDoesNotStopFlush() {
+        List<Long> written = new ArrayList<>();
+        writer.finish(task(1L, AiTask.TaskStatus.COMPLETED), task -> {
+            throw new IllegalStateException("listener failed");
+        });
+        writer.finish(task(2L, AiTask.TaskStatus.FAILED), task -> written.add(task.getId()));
+
+        assertTrue(flush());
+
+        assertEquals(List.of(2L), written);
+        assertEquals(0, writer.getPendingCount());
+    }
+
+    @Test
+    void shutdownFlushesRemainingWrites() throws InterruptedException {
+        List<AiTask> written = new ArrayList<>();
+        writer.finish(task(1L, AiTask.TaskStatus.COMPLETED), written::add);
+        writer.progress(task(2L, AiTask.TaskStatus.PROCESSING));
+
+        writer.shutdown();
+
+        assertEquals(0, writer.getPendingCount());
+        assertEquals(1, written.size());
+        verify(session).commit();
+    }
+
+    @Test
+    void writesSynchronouslyWhenDisabled() throws InterruptedException {
+        writer.shutdown();
+        ReflectionTestUtils.setField(writer, "enabled", false);
+        when(taskMapper.finish(any())).thenReturn(1, 0);
+        List<AiTask> written = new ArrayList<>();
+
+        assertTrue(writer.finish(task(1L, AiTask.TaskStatus.COMPLETED), written::add));
+        assertFalse(writer.finish(task(2L, AiTask.TaskStatus.COMPLETED), written::add));
+
+        assertEquals(1, written.size());
+        assertEquals(0, writer.getPendingCount());
+    }
+
+    private boolean flush() {
+        return Boolean.TRUE.equals(ReflectionTestUtils.invokeMethod(writer, "flush"));
+    }
+
+    private double droppedCount(String reason) {
+        return meterRegistry.get("task.status.write.dropped").tag("reason", reason).counter().count();
+    }
+
+    private static AiTask task(Long id, AiTask.TaskStatus status) {
+        AiTask task = new AiTask();
+        task.setId(id);
+        task.setUserId("u1");
+        task.setType(AiTask.TaskType.TEXT_TO_IMAGE);
+        task.setProvider("simulated");
+        task.setStatus(status);
+        task.setLeaseOwner("node-1");
+        task.setItemsCompleted(0);
+        task.setItemsFailed(0);
+        return task;
+    }
+}
@@ -0,0 +1,159 @@
+package com.neoaigc.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 上传文件的格式识别、大小限制和按内容去重
+ */
+class UploadStorageServiceTest {
+
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 0x0D, 'I', 'H', 'D', 'R'};
+    private static final byte[] JPG = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 0x10, 'J', 'F', 'I', 'F'};
+    private static final byte[] WEBP = {'R', 'I', 'F', 'F', 0x24, 0, 0, 0, 'W', 'E', 'B', 'P', 'V', 'P', '8', ' '};
+    private static final byte[] ZIP = {'P', 'K', 0x03, 0x04, 0x14, 0, 0, 0};
+
+    @TempDir
+    Path uploadDir;
+
+    private UploadStorageService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new UploadStorageService();
+        ReflectionTestUtils.setField(service, "uploadPath", uploadDir.toString());
+        ReflectionTestUtils.setField(service, "maxSize", DataSize.ofKilobytes(1));
+        ReflectionTestUtils.setField(service, "allowedTypes", List.of("jpg", "jpeg", "png", "gif", "webp"));
+    }
+
+    @Test
+    void formatIsSniffedFromContent() throws Exception {
+        // 客户端声明的类型和文件名不影响识别结果
+        UploadStorageService.StoredFile png = service.store(file("photo.jpg", "image/jpeg", PNG));
+        assertEquals("png", png.extension());
+        assertTrue(png.url().endsWith(".png"));
+
+        assertEquals("jpg", service.store(file("photo", "application/octet-stream", JPG)).extension());
+        assertEquals("webp", service.store(file("photo.png", "image/png", WEBP)).extension());
+    }
+
+    @Test
+    void hashAndSizeAreComputedWhileWriting() throws Exception {
+        byte[] content = Arrays.copyOf(PNG, 700);
+
+        UploadStorageService.StoredFile stored = service.store(file("a.png", "image/png", content));
+
+        assertEquals(700, stored.size());
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content)), stored.sha256());
+        assertArrayEquals(content, Files.readAllBytes(uploadDir.resolve(stored.url().substring("/uploads/".length()))));
+    }
+
+    @Test
+    void unknownOrDisallowedFormatIsRejected() throws Exception {
+        IOException unknown = assertThrows(IOException.class,
+                () -> service.store(file("a.png", "image/png", "not an image".getBytes())));
+        assertEquals("Only image files are allowed", unknown.getMessage());
+        // 能识别但不是允许的图片格式
+        assertThrows(IOException.class, () -> service.store(file("a.png", "image/png", ZIP)));
+        assertNoFilesLeft();
+    }
+
+    @Test
+    void oversizedUploadIsRejected() throws Exception {
+        assertThrows(IOException.class, () -> service.store(file("a.png", "image/png", Arrays.copyOf(PNG, 1025))));
+        assertNoFilesLeft();
+    }
+
+    @Test
+    void sizeLimitIsEnforcedWhileStreaming() throws Exception {
+        UploadStorageService.Ingest ingest = service.begin("archives", 100);
+        try {
+            ingest.write(ByteBuffer.wrap(new byte[60]));
+            // 声明的大小不可信，按实际写入的字节数判断
+            assertThrows(IOException.class, () -> ingest.write(ByteBuffer.wrap(new byte[60])));
+        } finally {
+            ingest.abort();
+        }
+        assertNoFilesLeft();
+    }
+
+    @Test
+    void ingestAcceptsChunkedWrites() throws Exception {
+        UploadStorageService.Ingest ingest = service.begin("archives", 1024);
+        try {
+            // 文件头分在多次写入中
+            ingest.write(ByteBuffer.wrap(ZIP, 0, 2));
+            ingest.write(ByteBuffer.wrap(ZIP, 2, ZIP.length - 2));
+            UploadStorageService.StoredFile stored = ingest.commit("zip"::equals, "Invalid archive");
+            assertEquals("zip", stored.extension());
+            assertTrue(stored.url().startsWith("/uploads/archives/"));
+        } finally {
+            ingest.abort();
+        }
+    }
+
+    @Test
+    void fileIsStoredUnderShardedContentPath() throws Exception {
+        UploadStorageService.StoredFile stored = service.store(file("a.png", "image/png", PNG));
+
+        String sha256 = stored.sha256();
+        assertEquals("/uploads/" + sha256.substring(0, 2) + "/" + sha256.substring(2, 4) + "/" + sha256 + ".png", stored.url());
+        assertEquals(sha256, UploadStorageService.sha256FromUrl(stored.url()));
+        assertEquals(sha256, UploadStorageService.sha256FromUrl("/uploads/mirror" + stored.url().substring("/uploads".length())));
+        assertNull(UploadStorageService.sha256FromUrl("/uploads/legacy-name.png"));
+    }
+
+    @Test
+    void duplicateUploadReusesExistingFile() throws Exception {
+        UploadStorageService.StoredFile first = service.store(file("a.png", "image/png", PNG));
+        Path stored = uploadDir.resolve(first.url().substring("/uploads/".length()));
+        FileTime written = FileTime.fromMillis(1_000_000L);
+        Files.setLastModifiedTime(stored, written);
+
+        UploadStorageService.StoredFile second = service.store(file("b.jpg", "image/jpeg", PNG));
+
+        assertEquals(first, second);
+        // 已有文件不被重写，临时文件也已删除
+        assertEquals(written, Files.getLastModifiedTime(stored));
+        try (Stream<Path> files = Files.walk(uploadDir)) {
+            assertEquals(List.of(stored), files.filter(Files::isRegularFile).toList());
+        }
+    }
+
+    @Test
+    void differentContentIsStoredSeparately() throws Exception {
+        UploadStorageService.StoredFile first = service.store(file("a.png", "image/png", PNG));
+        UploadStorageService.StoredFile second = service.store(file("a.png", "image/png", Arrays.copyOf(PNG, 32)));
+
+        assertNotEquals(first.url(), second.url());
+        assertTrue(Files.isRegularFile(uploadDir.resolve(first.url().substring("/uploads/".length()))));
+        assertTrue(Files.isRegularFile(uploadDir.resolve(second.url().substring("/uploads/".length()))));
+    }
+
+    private void assertNoFilesLeft() throws IOException {
+        try (Stream<Path> files = Files.walk(uploadDir)) {
+            assertEquals(List.of(), files.filter(Files::isRegularFile).toList());
+        }
+    }
+
+    private static MockMultipartFile file(String name, String contentType, byte[] content) {
+        return new MockMultipartFile("file", name, contentType, content);
+    }
+}
@@ -0,0 +1,97 @@
+package com.neoaigc.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkheadTest {
+
+    private static final long SHORT = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long LONG = TimeUnit.SECONDS.toNanos(5);
+
+    @Test
+    void limitsConcurrentCalls() throws InterruptedException {
+        Bulkhead bulkhead = new Bulkhead(2, 0);
+        assertTrue(bulkhead.acquire(0));
+        assertTrue(bulkhead.acquire(0));
+        assertEquals(0, bulkhead.getAvailable());
+
+        // 不允许排队时立即拒绝
+        assertFalse(bulkhead.acquire(LONG));
+
+        bulkhead.release();
+        assertTrue(bulkhead.acquire(0));
+    }
+
+    @Test
+    void timedOutWaiterLeavesQueue() throws InterruptedException {
+        Bulkhead bulkhead = new Bulkhead(1, 1);
+        assertTrue(bulkhead.acquire(0));
+
+        assertFalse(bulkhead.acquire(SHORT));
+        assertEquals(0, bulkhead.getWaiting());
+
+        // 超时的等待者已释放排队位置，新的等待者还能进入队列
+        assertFalse(bulkhead.acquire(SHORT));
+        assertEquals(0, bulkhead.getWaiting());
+        assertEquals(0, bulkhead.getAvailable());
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() throws Exception {
+        Bulkhead bulkhead = new Bulkhead(1, 1);
+        assertTrue(bulkhead.acquire(0));
+
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> {
+            started.countDown();
+            try {
+                return bulkhead.acquire(LONG);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        started.await();
+        long deadline = System.nanoTime() + LONG;
+        while (bulkhead.getWaiting() == 0 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(1, bulkhead.getWaiting());
+
+        assertFalse(bulkhead.acquire(LONG));
+
+        bulkhead.release();
+        assertTrue(waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(0, bulkhead.getWaiting());
+    }
+
+    @Test
+    void interruptedWaiterLeavesQueue() throws Exception {
+        Bulkhead bulkhead = new Bulkhead(1, 1);
+        assertTrue(bulkhead.acquire(0));
+
+        CompletableFuture<Throwable> outcome = new CompletableFuture<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                bulkhead.acquire(LONG);
+                outcome.complete(null);
+            } catch (Throwable t) {
+                outcome.complete(t);
+            }
+        });
+        waiter.start();
+        long deadline = System.nanoTime() + LONG;
+        while (bulkhead.getWaiting() == 0 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        waiter.interrupt();
+
+        assertInstanceOf(InterruptedException.class, outcome.get(5, TimeUnit.SECONDS));
+        assertEquals(0, bulkhead.getWaiting());
+        assertEquals(0, bulkhead.getAvailable());
+    }
+}
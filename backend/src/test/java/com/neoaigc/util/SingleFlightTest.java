@@ -0,0 +1,138 @@
+package com.neoaigc.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private static final long WAIT = TimeUnit.SECONDS.toNanos(5);
+
+    @Test
+    void concurrentCallsWithSameKeyRunOnce() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        int callers = 8;
+
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> flight.execute("key", WAIT, () -> {
+                    calls.incrementAndGet();
+                    await(release);
+                    return "result";
+                })));
+            }
+            // 等其余调用者都加入后再让执行者返回
+            long deadline = System.nanoTime() + WAIT;
+            while (flight.getCoalescedCount() < callers - 1 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(1, flight.getInFlightCount());
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("result", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, calls.get());
+        assertEquals(callers - 1, flight.getCoalescedCount());
+        assertEquals(0, flight.getInFlightCount());
+    }
+
+    @Test
+    void differentKeysRunIndependently() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        assertEquals("a", flight.execute("a", WAIT, () -> "a"));
+        assertEquals("b", flight.execute("b", WAIT, () -> "b"));
+        assertEquals(0, flight.getCoalescedCount());
+    }
+
+    @Test
+    void waitersReceiveLeaderFailureAndNextCallRunsAgain() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> call(flight, () -> {
+            started.countDown();
+            await(release);
+            throw new IllegalStateException("boom");
+        }));
+        started.await();
+        CompletableFuture<String> waiter = CompletableFuture.supplyAsync(() -> call(flight, () -> "unused"));
+        long deadline = System.nanoTime() + WAIT;
+        while (flight.getCoalescedCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        assertFailedWith(leader, "boom");
+        assertFailedWith(waiter, "boom");
+
+        // 失败不会被缓存，之后的调用重新执行
+        assertEquals("retry", flight.execute("key", WAIT, () -> "retry"));
+        assertEquals(0, flight.getInFlightCount());
+    }
+
+    @Test
+    void waiterTimeoutDoesNotAffectLeader() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> call(flight, () -> {
+            started.countDown();
+            await(release);
+            return "result";
+        }));
+        started.await();
+
+        assertThrows(TimeoutException.class,
+                () -> flight.execute("key", TimeUnit.MILLISECONDS.toNanos(50), () -> "unused"));
+        assertEquals(1, flight.getInFlightCount());
+
+        release.countDown();
+        assertEquals("result", leader.get(5, TimeUnit.SECONDS));
+        assertEquals(0, flight.getInFlightCount());
+    }
+
+    private static String call(SingleFlight<String, String> flight, Supplier<String> supplier) {
+        try {
+            return flight.execute("key", WAIT, supplier);
+        } catch (TimeoutException | InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void assertFailedWith(CompletableFuture<String> future, String message) {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertEquals(message, e.getCause().getMessage());
+    }
+}
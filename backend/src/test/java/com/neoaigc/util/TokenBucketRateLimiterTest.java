@@ -0,0 +1,74 @@
+package com.neoaigc.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketRateLimiterTest {
+
+    @Test
+    void burstIsAvailableImmediately() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(1, 5);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.reserve(0), "第" + (i + 1) + "个令牌应在突发容量内");
+        }
+        assertEquals(-1, limiter.reserve(0));
+    }
+
+    @Test
+    void rejectedReservationDoesNotConsumeToken() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(1, 1);
+        assertEquals(0, limiter.reserve(0));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(-1, limiter.reserve(0));
+        }
+        // 被拒绝的预约不推迟下一个令牌，等待时间仍不超过一个间隔
+        long waitNanos = limiter.reserve(TimeUnit.SECONDS.toNanos(10));
+        assertTrue(waitNanos > 0 && waitNanos <= TimeUnit.SECONDS.toNanos(1), "等待时间: " + waitNanos);
+    }
+
+    @Test
+    void tokensRefillAtConfiguredRate() throws InterruptedException {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(20, 2);
+        assertEquals(0, limiter.reserve(0));
+        assertEquals(0, limiter.reserve(0));
+        assertEquals(-1, limiter.reserve(0));
+
+        // 每50ms生成一个令牌，留出余量
+        TimeUnit.MILLISECONDS.sleep(120);
+        assertEquals(0, limiter.reserve(0));
+        assertEquals(0, limiter.reserve(0));
+        assertEquals(-1, limiter.reserve(0));
+    }
+
+    @Test
+    void reservationsBeyondBurstAreSpacedByInterval() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, 1);
+        long maxWait = TimeUnit.SECONDS.toNanos(10);
+        assertEquals(0, limiter.reserve(maxWait));
+        long second = limiter.reserve(maxWait);
+        long third = limiter.reserve(maxWait);
+        long interval = TimeUnit.MILLISECONDS.toNanos(100);
+        assertTrue(second > 0 && second <= interval, "第二个令牌等待: " + second);
+        assertTrue(third > second && third <= 2 * interval, "第三个令牌等待: " + third);
+    }
+
+    @Test
+    void acquireWaitsForNextToken() throws InterruptedException {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, 1);
+        long start = System.nanoTime();
+        assertTrue(limiter.acquire(0));
+        assertFalse(limiter.acquire(TimeUnit.MILLISECONDS.toNanos(10)));
+
+        // 下一个令牌不早于第一个令牌之后一个间隔
+        assertTrue(limiter.acquire(TimeUnit.SECONDS.toNanos(1)));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    void rejectsNonPositiveRate() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucketRateLimiter(0, 1));
+    }
+}
@@ -0,0 +1,102 @@
+-- NeoAI GC 数据库升级脚本
+-- 已有数据库升级到当前表结构，可重复执行；新部署直接执行 init.sql 即可
+-- 执行方式: mysql -u root -p < migrate.sql
+
+USE neoaigc;
+
+DELIMITER //
+
+-- 列不存在时添加
+DROP PROCEDURE IF EXISTS add_column_if_missing //
+CREATE PROCEDURE add_column_if_missing(IN tbl VARCHAR(64), IN col VARCHAR(64), IN definition TEXT)
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM information_schema.COLUMNS
+                   WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = tbl AND COLUMN_NAME = col) THEN
+        SET @ddl = CONCAT('ALTER TABLE ', tbl, ' ADD COLUMN ', col, ' ', definition);
+        PREPARE stmt FROM @ddl;
+        EXECUTE stmt;
+        DEALLOCATE PREPARE stmt;
+    END IF;
+END //
+
+-- 索引不存在时添加
+DROP PROCEDURE IF EXISTS add_index_if_missing //
+CREATE PROCEDURE add_index_if_missing(IN tbl VARCHAR(64), IN idx VARCHAR(64), IN columns_list TEXT)
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM information_schema.STATISTICS
+                   WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = tbl AND INDEX_NAME = idx) THEN
+        SET @ddl = CONCAT('ALTER TABLE ', tbl, ' ADD INDEX ', idx, ' (', columns_list, ')');
+        PREPARE stmt FROM @ddl;
+        EXECUTE stmt;
+        DEALLOCATE PREPARE stmt;
+    END IF;
+END //
+
+-- 索引存在时删除
+DROP PROCEDURE IF EXISTS drop_index_if_exists //
+CREATE PROCEDURE drop_index_if_exists(IN tbl VARCHAR(64), IN idx VARCHAR(64))
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.STATISTICS
+               WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = tbl AND INDEX_NAME = idx) THEN
+        SET @ddl = CONCAT('ALTER TABLE ', tbl, ' DROP INDEX ', idx);
+        PREPARE stmt FROM @ddl;
+        EXECUTE stmt;
+        DEALLOCATE PREPARE stmt;
+    END IF;
+END //
+
+DELIMITER ;
+
+-- AI任务表：提供商、任务租约（旧版本遗留的PROCESSING任务租约为空，升级后会被重新领取）
+CALL add_column_if_missing('ai_tasks', 'provider', 'VARCHAR(50) COMMENT ''AI服务提供商: tencent, aliyun'' AFTER error_message');
+CALL add_column_if_missing('ai_tasks', 'lease_owner', 'VARCHAR(100) COMMENT ''持有租约的工作节点'' AFTER provider');
+CALL add_column_if_missing('ai_tasks', 'lease_expires_at', 'DATETIME COMMENT ''租约过期时间'' AFTER lease_owner');
+CALL add_column_if_missing('ai_tasks', 'attempts', 'INT NOT NULL DEFAULT 0 COMMENT ''已领取次数'' AFTER lease_expires_at');
+
+-- AI任务表：跳过生成结果缓存
+CALL add_column_if_missing('ai_tasks', 'force_fresh', 'TINYINT(1) NOT NULL DEFAULT 0 COMMENT ''跳过生成结果缓存'' AFTER attempts');
+
+-- AI任务表：批量任务进度
+CALL add_column_if_missing('ai_tasks', 'item_count', 'INT NOT NULL DEFAULT 0 COMMENT ''批量任务的子项数，0表示单张图片的任务'' AFTER force_fresh');
+CALL add_column_if_missing('ai_tasks', 'items_completed', 'INT NOT NULL DEFAULT 0 COMMENT ''已成功的子项数'' AFTER item_count');
+CALL add_column_if_missing('ai_tasks', 'items_failed', 'INT NOT NULL DEFAULT 0 COMMENT ''已失败的子项数'' AFTER items_completed');
+CALL add_column_if_missing('ai_tasks', 'bundle_zip', 'TINYINT(1) NOT NULL DEFAULT 0 COMMENT ''批量任务完成后把结果打包为zip'' AFTER items_failed');
+
+-- AI任务表索引：领取任务按状态和租约查询，列表按用户（和类型）与创建时间分页；新索引覆盖旧的单列索引
+CALL add_index_if_missing('ai_tasks', 'idx_status_lease', 'status, lease_expires_at');
+CALL add_index_if_missing('ai_tasks', 'idx_user_created', 'user_id, created_at, id');
+CALL add_index_if_missing('ai_tasks', 'idx_user_type_created', 'user_id, type, created_at, id');
+CALL drop_index_if_exists('ai_tasks', 'idx_user_id');
+CALL drop_index_if_exists('ai_tasks', 'idx_status');
+
+-- 批量任务子项表
+CREATE TABLE IF NOT EXISTS ai_task_items (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY COMMENT '子项ID',
+    task_id BIGINT NOT NULL COMMENT '所属任务ID',
+    seq INT NOT NULL COMMENT '在批量任务中的序号，从0开始',
+    image_url VARCHAR(1000) NOT NULL COMMENT '输入图片URL',
+    result_url VARCHAR(1000) COMMENT '结果URL',
+    status VARCHAR(50) DEFAULT 'PENDING' COMMENT '状态: PENDING, COMPLETED, FAILED',
+    error_message TEXT COMMENT '错误信息',
+    created_at DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    updated_at DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    UNIQUE KEY uk_task_seq (task_id, seq)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='批量任务子项表';
+
+-- 模板表：更新时间
+CALL add_column_if_missing('templates', 'updated_at', 'DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT ''更新时间'' AFTER created_at');
+
+-- 生成结果缓存表
+CREATE TABLE IF NOT EXISTS generation_cache (
+    cache_key CHAR(64) PRIMARY KEY COMMENT '缓存键: SHA-256(提供商, 任务类型, 规范化提示词, 输入图片SHA-256)',
+    provider VARCHAR(50) NOT NULL COMMENT 'AI服务提供商',
+    type VARCHAR(50) NOT NULL COMMENT '任务类型',
+    result_url VARCHAR(1000) NOT NULL COMMENT '结果URL',
+    expires_at DATETIME NOT NULL COMMENT '过期时间',
+    created_at DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    INDEX idx_expires_at (expires_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='生成结果缓存表';
+
+DROP PROCEDURE IF EXISTS add_column_if_missing;
+DROP PROCEDURE IF EXISTS add_index_if_missing;
+DROP PROCEDURE IF EXISTS drop_index_if_exists;
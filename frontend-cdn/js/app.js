@@ -1,10 +1,13 @@
 // NeoAI GC Vue Application
-const { createApp, ref, onMounted, computed } = Vue;
+const { createApp, ref, onMounted, onUnmounted, computed } = Vue;
 
 // API Base URL - configurable for different environments
 // Use env variable if available, otherwise default to localhost
 const API_BASE = window.API_BASE_URL || 'http://localhost:8080/api';
 
+// 后端保存的文件返回 /uploads/... 相对地址，需要拼上API地址
+const fileUrl = (url) => url && url.startsWith('/uploads/') ? API_BASE + url : url;
+
 // AI服务提供商配置
 const AI_PROVIDERS = {
     tencent: { name: '腾讯混元AI', value: 'tencent' },
@@ -39,6 +42,111 @@ const api = {
     }
 };
 
+// 任务状态推送：一个SSE连接接收当前用户所有任务的状态变更，替代逐个任务轮询
+// EventSource无法携带Authorization头，这里用fetch读取事件流
+const taskStream = {
+    controller: null,
+    waiters: new Map(),
+    
+    connect() {
+        if (this.controller || !api.getToken()) return;
+        const controller = new AbortController();
+        this.controller = controller;
+        let reconnect = true;
+        
+        fetch(`${API_BASE}/task/stream`, {
+            headers: { 'Authorization': `Bearer ${api.getToken()}`, 'Accept': 'text/event-stream' },
+            signal: controller.signal
+        }).then(async (response) => {
+            if (!response.ok) {
+                reconnect = response.status !== 401 && response.status !== 403;
+                throw new Error(`HTTP ${response.status}`);
+            }
+            const reader = response.body.getReader();
+            const decoder = new TextDecoder();
+            let buffer = '';
+            while (true) {
+                const { done, value } = await reader.read();
+                if (done) break;
+                buffer += decoder.decode(value, { stream: true });
+                let index;
+                while ((index = buffer.indexOf('\n\n')) >= 0) {
+                    this.handleEvent(buffer.slice(0, index));
+                    buffer = buffer.slice(index + 2);
+                }
+            }
+        }).catch((error) => {
+            if (error.name !== 'AbortError') {
+                console.error('Task stream error:', error);
+            }
+        }).finally(() => {
+            if (this.controller !== controller) return;
+            this.controller = null;
+            if (reconnect) {
+                // 断线重连后补查等待中的任务，避免漏掉断线期间的状态变更
+                setTimeout(() => {
+                    this.connect();
+                    this.waiters.forEach((_, taskId) => this.check(taskId));
+                }, 3000);
+            }
+        });
+    },
+    
+    disconnect() {
+        const controller = this.controller;
+        this.controller = null;
+        this.waiters.clear();
+        if (controller) controller.abort();
+    },
+    
+    handleEvent(block) {
+        let name = 'message';
+        const data = [];
+        for (const line of block.split('\n')) {
+            if (line.startsWith('event:')) {
+                name = line.slice(6).trim();
+            } else if (line.startsWith('data:')) {
+                data.push(line.slice(5).trim());
+            }
+        }
+        if (name === 'task' && data.length > 0) {
+            this.dispatch(JSON.parse(data.join('\n')));
+        }
+    },
+    
+    dispatch(task) {
+        document.dispatchEvent(new CustomEvent('task-status', { detail: task }));
+        if (task.status !== 'COMPLETED' && task.status !== 'FAILED') return;
+        const waiters = this.waiters.get(task.id);
+        if (!waiters) return;
+        this.waiters.delete(task.id);
+        waiters.forEach(resolve => resolve(task));
+    },
+    
+    // 等待任务结束，返回最终状态（COMPLETED或FAILED）
+    waitFor(taskId) {
+        this.connect();
+        return new Promise((resolve) => {
+            const waiters = this.waiters.get(taskId) || [];
+            waiters.push(resolve);
+            this.waiters.set(taskId, waiters);
+            // 订阅建立前任务可能已经结束，补查一次
+            this.check(taskId);
+        });
+    },
+    
+    async check(taskId) {
+        try {
+            const response = await axios.get(`${API_BASE}/task/${taskId}`);
+            if (response.data.success) {
+                this.dispatch(response.data.data);
+            }
+        } catch (error) {
+            console.error('Failed to check task status:', error);
+        }
+    }
+};
+
 // Toast 通知
 const toast = {
     show(message, type = 'info') {
@@ -88,6 +196,11 @@ const TextToImage = {
                 </div>
             </div>
             
+            <label class="flex items-center gap-2 mb-4 text-sm text-gray-400 cursor-pointer">
+                <input type="checkbox" v-model="forceFresh" class="accent-primary">
+                重新生成（不使用相同提示词的已有结果）
+            </label>
+            
             <button 
                 @click="generate"
                 :disabled="generating || !prompt"
@@ -114,6 +227,7 @@ const TextToImage = {
         const resultUrl = ref('');
         const templates = ref([]);
         const selectedTemplate = ref(null);
+        const forceFresh = ref(false);
         
         const loadTemplates = async () => {
             try {
@@ -149,6 +263,7 @@ const TextToImage = {
                 formData.append('type', 'TEXT_TO_IMAGE');
                 formData.append('prompt', prompt.value);
                 formData.append('provider', localStorage.getItem('aiProvider') || 'tencent');
+                formData.append('forceFresh', forceFresh.value);
                 
                 const response = await axios.post(`${API_BASE}/task/create`, formData, {
                     headers: { 'Content-Type': 'multipart/form-data' }
@@ -158,27 +273,15 @@ const TextToImage = {
                     toast.success('任务创建成功');
                     emit('task-created', response.data.taskId);
                     
-                    // 轮询任务状态
-                    const taskId = response.data.taskId;
-                    const pollInterval = setInterval(async () => {
-                        try {
-                            const taskResponse = await axios.get(`${API_BASE}/task/${taskId}`);
-                            const task = taskResponse.data.data;
-                            
-                            if (task.status === 'COMPLETED') {
-                                clearInterval(pollInterval);
-                                resultUrl.value = task.resultUrl;
-                                generating.value = false;
-                                toast.success('生成完成！');
-                            } else if (task.status === 'FAILED') {
-                                clearInterval(pollInterval);
-                                generating.value = false;
-                                toast.error('生成失败：' + task.errorMessage);
-                            }
-                        } catch (error) {
-                            console.error('Failed to check task status:', error);
-                        }
-                    }, 2000);
+                    // 等待任务状态推送
+                    const task = await taskStream.waitFor(response.data.taskId);
+                    generating.value = false;
+                    if (task.status === 'COMPLETED') {
+                        resultUrl.value = task.resultUrl;
+                        toast.success('生成完成！');
+                    } else {
+                        toast.error('生成失败：' + task.errorMessage);
+                    }
                 } else {
                     toast.error(response.data.message);
                     generating.value = false;
@@ -204,7 +307,7 @@ const TextToImage = {
             });
         });
         
-        return { prompt, generating, resultUrl, templates, selectedTemplate, selectTemplate, generate };
+        return { prompt, generating, resultUrl, templates, selectedTemplate, forceFresh, selectTemplate, generate };
     }
 };
 
@@ -416,24 +519,41 @@ const BatchMatting = {
                 </div>
             </div>
             
+            <label class="flex items-center gap-2 mb-4 text-sm text-gray-400">
+                <input type="checkbox" v-model="bundleZip" class="rounded">
+                完成后打包为zip下载
+            </label>
+            
             <button 
                 @click="process"
                 :disabled="processing || images.length === 0"
                 class="w-full bg-gradient-to-r from-primary to-secondary hover:from-secondary hover:to-accent text-white py-3 rounded-xl transition-all duration-300 font-medium disabled:opacity-50 disabled:cursor-not-allowed">
-                {{ processing ? '处理中...' : '开始抠图' }}
+                {{ processing ? (progress ? '处理中 ' + progress.done + '/' + progress.total : '上传中...') : '开始抠图' }}
             </button>
             
             <div v-if="results.length > 0" class="mt-6">
                 <h4 class="text-lg font-medium mb-4">处理结果</h4>
+                <a 
+                    v-if="archiveUrl"
+                    :href="archiveUrl"
+                    class="inline-flex items-center gap-2 mb-4 px-6 py-2 bg-surface hover:bg-primary text-white rounded-lg transition-all duration-300">
+                    <i data-lucide="download" class="w-4 h-4"></i>
+                    下载全部（zip）
+                </a>
                 <div class="grid grid-cols-2 md:grid-cols-3 gap-4">
-                    <div v-for="(result, index) in results" :key="index" class="bg-surface rounded-lg overflow-hidden">
-                        <img :src="result" class="w-full h-32 object-cover">
-                        <a 
-                            :href="result" 
-                            download="matting-image.png"
-                            class="block px-4 py-2 text-center text-primary hover:text-white hover:bg-primary transition-all">
-                            下载
-                        </a>
+                    <div v-for="item in results" :key="item.seq" class="bg-surface rounded-lg overflow-hidden">
+                        <template v-if="item.status === 'COMPLETED'">
+                            <img :src="fileUrl(item.resultUrl)" class="w-full h-32 object-cover">
+                            <a 
+                                :href="fileUrl(item.resultUrl)" 
+                                download="matting-image.png"
+                                class="block px-4 py-2 text-center text-primary hover:text-white hover:bg-primary transition-all">
+                                下载
+                            </a>
+                        </template>
+                        <div v-else class="h-32 flex items-center justify-center px-4 text-center text-sm text-red-400">
+                            第 {{ item.seq + 1 }} 张处理失败
+                        </div>
                     </div>
                 </div>
             </div>
@@ -443,6 +563,10 @@ const BatchMatting = {
         const images = ref([]);
         const results = ref([]);
         const processing = ref(false);
+        const bundleZip = ref(false);
+        const progress = ref(null);
+        const archiveUrl = ref(null);
+        let currentTaskId = null;
         const fileInput = ref(null);
         const dragover = ref(false);
         
@@ -490,34 +614,65 @@ const BatchMatting = {
             }
             
             processing.value = true;
+            progress.value = null;
+            results.value = [];
+            archiveUrl.value = null;
             try {
-                // 批量处理
-                for (let i = 0; i < images.value.length; i++) {
-                    const formData = new FormData();
-                    formData.append('type', 'BATCH_MATTING');
-                    formData.append('prompt', 'Remove background');
-                    formData.append('file', images.value[i].file);
-                    formData.append('provider', localStorage.getItem('aiProvider') || 'tencent');
-                    
-                    const response = await axios.post(`${API_BASE}/task/create`, formData, {
-                        headers: { 'Content-Type': 'multipart/form-data' }
-                    });
-                    
-                    if (response.data.success) {
-                        toast.success(`第 ${i + 1} 张图片处理中...`);
-                    }
+                // 所有图片作为一个批量任务提交，由后端并行处理
+                const formData = new FormData();
+                images.value.forEach(image => formData.append('files', image.file));
+                formData.append('provider', localStorage.getItem('aiProvider') || 'tencent');
+                formData.append('zip', bundleZip.value);
+                
+                const response = await axios.post(`${API_BASE}/task/batch-matting`, formData, {
+                    headers: { 'Content-Type': 'multipart/form-data' }
+                });
+                
+                if (!response.data.success) {
+                    toast.error(response.data.message);
+                    processing.value = false;
+                    return;
                 }
                 
-                toast.success('所有任务已提交');
+                toast.success(`已提交 ${response.data.itemCount} 张图片`);
+                emit('task-created', response.data.taskId);
+                currentTaskId = response.data.taskId;
+                progress.value = { done: 0, total: response.data.itemCount };
+                
+                const task = await taskStream.waitFor(currentTaskId);
+                const items = await axios.get(`${API_BASE}/task/${currentTaskId}/items`);
+                currentTaskId = null;
                 processing.value = false;
+                if (items.data.success) {
+                    results.value = items.data.data;
+                }
+                if (task.status === 'COMPLETED') {
+                    if (bundleZip.value && task.resultUrl && task.resultUrl.endsWith('.zip')) {
+                        archiveUrl.value = fileUrl(task.resultUrl);
+                    }
+                    toast.success(task.errorMessage ? `处理完成，${task.errorMessage}` : '处理完成！');
+                } else {
+                    toast.error('处理失败：' + task.errorMessage);
+                }
             } catch (error) {
                 console.error('Failed to process images:', error);
                 toast.error('处理失败');
+                currentTaskId = null;
                 processing.value = false;
             }
         };
         
+        // 任务状态推送中带有已完成的张数
+        const onTaskStatus = (e) => {
+            const task = e.detail;
+            if (task.id === currentTaskId && task.itemCount) {
+                progress.value = { done: task.itemsCompleted + task.itemsFailed, total: task.itemCount };
+            }
+        };
+        
         onMounted(() => {
+            document.addEventListener('task-status', onTaskStatus);
+            
             // 监听登录成功事件
             document.addEventListener('login-success', async (e) => {
                 const data = e.detail;
@@ -529,7 +684,11 @@ const BatchMatting = {
             });
         });
         
-        return { images, results, processing, fileInput, dragover, triggerFileUpload, handleFileChange, handleDrop, removeImage, process };
+        onUnmounted(() => {
+            document.removeEventListener('task-status', onTaskStatus);
+        });
+        
+        return { images, results, processing, bundleZip, progress, archiveUrl, fileInput, dragover, fileUrl, triggerFileUpload, handleFileChange, handleDrop, removeImage, process };
     }
 };
 
@@ -757,8 +916,14 @@ const TaskHistory = {
                     </div>
                     
                     <div v-if="task.status === 'COMPLETED' && task.resultUrl" class="mt-4">
+                        <img 
+                            v-if="task.resultThumbnailUrl"
+                            :src="API_BASE + task.resultThumbnailUrl"
+                            loading="lazy"
+                            alt="结果缩略图"
+                            class="w-32 h-32 object-cover rounded-lg mb-3">
                         <a 
-                            :href="task.resultUrl" 
+                            :href="fileUrl(task.resultUrl)" 
                             target="_blank"
                             class="inline-flex items-center gap-2 px-4 py-2 bg-primary hover:bg-secondary text-white rounded-lg transition-all duration-300">
                             <i data-lucide="eye" class="w-4 h-4"></i>
@@ -770,19 +935,32 @@ const TaskHistory = {
                         {{ task.errorMessage }}
                     </div>
                 </div>
+                
+                <button 
+                    v-if="nextCursor"
+                    @click="loadMore"
+                    :disabled="loading"
+                    class="w-full py-3 bg-surface hover:bg-primary text-white rounded-lg transition-all duration-300 disabled:opacity-50">
+                    {{ loading ? '加载中...' : '加载更多' }}
+                </button>
             </div>
         </div>
     `,
     setup() {
         const tasks = ref([]);
         const loading = ref(false);
+        const nextCursor = ref(null);
         
-        const loadTasks = async () => {
+        // 游标分页：cursor为空时加载首页并替换列表，否则追加到末尾
+        const loadTasks = async (cursor = null) => {
             loading.value = true;
             try {
-                const response = await axios.get(`${API_BASE}/task/list`);
+                const params = cursor ? { cursor } : {};
+                const response = await axios.get(`${API_BASE}/task/list`, { params });
                 if (response.data.success) {
-                    tasks.value = response.data.data || [];
+                    const page = response.data.data || [];
+                    tasks.value = cursor ? tasks.value.concat(page) : page;
+                    nextCursor.value = response.data.hasMore ? response.data.nextCursor : null;
                 }
             } catch (error) {
                 console.error('Failed to load tasks:', error);
@@ -795,6 +973,12 @@ const TaskHistory = {
             loadTasks();
         };
         
+        const loadMore = () => {
+            if (nextCursor.value && !loading.value) {
+                loadTasks(nextCursor.value);
+            }
+        };
+        
         const getTypeLabel = (type) => {
             const labels = {
                 'TEXT_TO_IMAGE': '文生图',
@@ -820,11 +1004,26 @@ const TaskHistory = {
             return date.toLocaleString('zh-CN');
         };
         
+        // 收到状态推送时原地更新列表中的任务
+        const onTaskStatus = (e) => {
+            const update = e.detail;
+            const task = tasks.value.find(t => t.id === update.id);
+            if (task) {
+                Object.assign(task, update);
+            }
+        };
+        
         onMounted(() => {
             loadTasks();
+            taskStream.connect();
+            document.addEventListener('task-status', onTaskStatus);
+        });
+        
+        onUnmounted(() => {
+            document.removeEventListener('task-status', onTaskStatus);
         });
         
-        return { tasks, loading, refresh, getTypeLabel, getStatusLabel, formatDate };
+        return { API_BASE, fileUrl, tasks, loading, nextCursor, refresh, loadMore, getTypeLabel, getStatusLabel, formatDate };
     }
 };
 
@@ -921,6 +1120,7 @@ const App = {
         };
         
         const logout = () => {
+            taskStream.disconnect();
             api.clearToken();
             userInfo.value = null;
             showLoginModal.value = false;
@@ -956,6 +1156,7 @@ const App = {
             // 检查是否已登录，加载用户信息
             if (api.getToken()) {
                 loadUserInfo();
+                taskStream.connect();
             }
             loading.value = false;
             